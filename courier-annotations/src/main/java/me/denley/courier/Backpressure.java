@@ -0,0 +1,40 @@
+package me.denley.courier;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * When used with {@link ReceiveMessages} or {@link ReceiveData}, this annotation limits the number of deliveries
+ * that may be waiting for a recipient (in each receiving object), for recipients that may be slower than the
+ * rate that messages or data items arrive.
+ *
+ * Deliveries to the recipient are queued, and are made one at a time, in order, on the recipient's thread.
+ * The number of deliveries that were dropped, or that had to wait, is available from
+ * {@code Courier.getBackpressureStats}.
+ */
+@Target({ElementType.METHOD, ElementType.FIELD})
+@Retention(RetentionPolicy.CLASS)
+public @interface Backpressure {
+
+    /** What to do with a delivery when the recipient's queue is full. */
+    enum Policy {
+        /** Only the newest delivery is kept. Older ones that have not been made yet are dropped. */
+        LATEST,
+        /** The oldest delivery that has not been made yet is dropped, to make room for the new one. */
+        DROP_OLDEST,
+        /**
+         * The thread making the delivery waits until there is room in the queue. Deliveries made on the main thread
+         * never wait; the oldest delivery is dropped instead.
+         */
+        BLOCK
+    }
+
+    /** What to do with a delivery when the recipient's queue is full. */
+    Policy value();
+
+    /** The number of deliveries that may be waiting. This is ignored by {@link Policy#LATEST}, which keeps one. */
+    int capacity() default 1;
+
+}
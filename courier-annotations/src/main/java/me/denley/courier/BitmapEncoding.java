@@ -0,0 +1,37 @@
+package me.denley.courier;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Sets how a Bitmap field in a {@link Deliverable} class is encoded before it is sent as an Asset.
+ *
+ * Without this annotation, Bitmaps are encoded as PNG images, at full size.
+ */
+@Target(ElementType.FIELD)
+@Retention(RetentionPolicy.CLASS)
+public @interface BitmapEncoding {
+
+    /** The image format used to encode a Bitmap. */
+    enum Format {
+        PNG,
+        JPEG,
+        /** Requires API level 14 or higher on the sending device. */
+        WEBP
+    }
+
+    /** The image format to encode the Bitmap as. */
+    Format format() default Format.PNG;
+
+    /** The encoding quality, from 0 to 100. This is ignored by lossless formats (PNG). */
+    int quality() default 100;
+
+    /**
+     * The maximum width and height of the encoded image. Larger Bitmaps are scaled down (keeping their
+     * aspect ratio) before they are encoded. The default value, 0, means that Bitmaps are never scaled.
+     */
+    int maxDimension() default 0;
+
+}
@@ -12,4 +12,16 @@ import java.lang.annotation.Target;
 @Target(ElementType.TYPE)
 @Retention(RetentionPolicy.CLASS)
 public @interface Deliverable {
+
+    /**
+     * Whether fields are identified by a numeric tag, instead of by name. This makes payloads smaller (and faster
+     * to read) for classes with many fields, and allows fields to be renamed. Tagged classes sent as messages are
+     * also written directly to bytes, without a DataMap, if all of their fields support it.
+     *
+     * A field's tag is set with the {@link Tag} annotation. Fields without a {@link Tag} are numbered in the order
+     * they are declared, starting with the fields of the topmost {@link Deliverable} superclass. Tags must be unique
+     * across the class and its superclasses.
+     */
+    boolean tagged() default false;
+
 }
@@ -20,7 +20,29 @@ import java.lang.annotation.Target;
 @Retention(RetentionPolicy.CLASS)
 public @interface ReceiveData {
 
-    /** The path for which to receive data items. */
+    /**
+     * The path for which to receive data items.
+     *
+     * The path may be a pattern that matches many paths. A segment written as {@code {name}} matches any single
+     * segment, and a final segment written as {@code *} matches the rest of a path. For example, "/songs/{id}"
+     * matches "/songs/42", and "/songs/*" also matches "/songs/42/lyrics". The matched segments are passed (in order)
+     * to the annotated method, as String parameters following the payload (and before the source node ID, if present).
+     */
     String value();
 
+    /**
+     * The name of the executor on which to make the callback, as provided by the Dispatcher
+     * given to {@code Courier.setDispatcher}. Courier provides "main", "caller", "serial",
+     * and "compute" executors. By default, methods are called on the main thread (or on the calling
+     * thread if annotated with {@link BackgroundThread}), and fields are set on the calling thread.
+     */
+    String executor() default "";
+
+    /**
+     * Whether to unpack a separate copy of each data item for this recipient. By default, each data item is unpacked only once,
+     * and the same object is given to every recipient of the path (in every instance of the class that is receiving),
+     * so it must not be modified. Private copies are unpacked on the calling thread, once for each recipient.
+     */
+    boolean privateCopy() default false;
+
 }
@@ -0,0 +1,21 @@
+package me.denley.courier;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Sets the tag that identifies a field in a {@link Deliverable} class with {@link Deliverable#tagged} enabled.
+ *
+ * A field keeps the same tag if other fields are added, removed, or reordered, so tagged classes can be changed
+ * without breaking compatibility with older versions of an app (as long as tags aren't reused).
+ */
+@Target(ElementType.FIELD)
+@Retention(RetentionPolicy.CLASS)
+public @interface Tag {
+
+    /** The tag of the field. This must be a positive number, and unique within the class and its superclasses. */
+    int value();
+
+}
@@ -0,0 +1,135 @@
+package me.denley.courier;
+
+import android.content.Context;
+import android.os.Bundle;
+
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.wearable.Wearable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Manages the connection of the shared {@link GoogleApiClient}.
+ *
+ * Only one connection attempt is made at a time. Callers that arrive while a connection is being
+ * made wait for that attempt to complete, rather than creating and connecting their own client.
+ */
+final class ApiClientConnection {
+
+    private static final Object LOCK = new Object();
+
+    /** The client that is currently being connected, or null if no connection attempt is in progress. */
+    private static GoogleApiClient connectingClient = null;
+
+    /** Callbacks waiting for the current connection attempt to complete. */
+    private static final List<Runnable> WAITING = new ArrayList<Runnable>();
+
+    /**
+     * Runs the given callback once the shared client is connected, or the connection attempt
+     * has failed (in which case {@link WearableApis#googleApiClient} will be null).
+     *
+     * If the client is already connected, the callback is run immediately on the calling thread.
+     * Otherwise, it is run on the thread that receives the connection result. Callbacks are run
+     * in the order that they were given, so they should be short.
+     *
+     * @param context   The Context used to connect to the wearable API.
+     * @param callback  The callback to run when the connection attempt completes.
+     */
+    static void whenConnected(final Context context, final Runnable callback) {
+        synchronized (LOCK) {
+            final GoogleApiClient client = WearableApis.googleApiClient;
+            if(connectingClient == null && client != null && client.isConnected()) {
+                callback.run();
+                return;
+            }
+
+            WAITING.add(callback);
+
+            if(connectingClient == null) {
+                if(client != null && client.isConnecting()) {
+                    // The client is reconnecting by itself, so wait for that to finish
+                    connectingClient = client;
+                } else {
+                    connect(context);
+                }
+            }
+        }
+    }
+
+    /**
+     * Blocks until the shared client is connected, or the connection attempt has failed.
+     *
+     * This must not be called from the main thread.
+     *
+     * @param context The Context used to connect to the wearable API.
+     */
+    static void awaitConnection(final Context context) {
+        final CountDownLatch latch = new CountDownLatch(1);
+        whenConnected(context, new Runnable() {
+            @Override public void run() {
+                latch.countDown();
+            }
+        });
+
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Must be called while holding LOCK
+    private static void connect(final Context context) {
+        final GoogleApiClient[] clientHolder = new GoogleApiClient[1];
+        final GoogleApiClient client = new GoogleApiClient.Builder(context)
+                .addApi(Wearable.API)
+                .addConnectionCallbacks(new GoogleApiClient.ConnectionCallbacks() {
+                    @Override public void onConnected(Bundle bundle) {
+                        onConnectionAttemptFinished(clientHolder[0], true);
+                    }
+
+                    @Override public void onConnectionSuspended(int cause) {
+                        // The client will reconnect automatically
+                    }
+                })
+                .addOnConnectionFailedListener(new GoogleApiClient.OnConnectionFailedListener() {
+                    @Override public void onConnectionFailed(ConnectionResult result) {
+                        onConnectionAttemptFinished(clientHolder[0], false);
+                    }
+                })
+                .build();
+        clientHolder[0] = client;
+
+        connectingClient = client;
+        client.connect();
+    }
+
+    private static void onConnectionAttemptFinished(final GoogleApiClient client, final boolean success) {
+        synchronized (LOCK) {
+            if(success) {
+                WearableApis.googleApiClient = client;
+            } else if (WearableApis.googleApiClient == client) {
+                WearableApis.googleApiClient = null;
+            }
+
+            if(connectingClient != client) {
+                // This is a client that we're not waiting on (e.g. an old client reconnecting by itself)
+                return;
+            }
+            connectingClient = null;
+
+            // Run while holding the lock, so that these run before any newly arriving callbacks
+            final List<Runnable> callbacks = new ArrayList<Runnable>(WAITING);
+            WAITING.clear();
+            for(Runnable callback:callbacks) {
+                callback.run();
+            }
+        }
+    }
+
+    private ApiClientConnection(){}
+
+}
@@ -0,0 +1,189 @@
+package me.denley.courier;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.support.annotation.Nullable;
+import android.support.v4.util.LruCache;
+
+import com.google.android.gms.wearable.Asset;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A size-bounded cache of Asset contents and decoded Bitmaps, keyed by Asset digest.
+ *
+ * Data items are delivered again on every {@link Courier#startReceiving} and whenever a device connects,
+ * so without this the same Assets would be loaded and decoded over and over.
+ */
+final class AssetCache {
+
+    static final int DEFAULT_MAX_ASSET_BYTES = 1024 * 1024;
+    static final int DEFAULT_MAX_BITMAP_BYTES = 4 * 1024 * 1024;
+
+    private static final int READ_BUFFER_SIZE = 8 * 1024;
+
+    private static final AtomicLong HITS = new AtomicLong();
+    private static final AtomicLong MISSES = new AtomicLong();
+    private static final AtomicLong EVICTIONS = new AtomicLong();
+
+    @Nullable private static volatile LruCache<String, byte[]> assets = createAssetCache(DEFAULT_MAX_ASSET_BYTES);
+    @Nullable private static volatile LruCache<String, Bitmap> bitmaps = createBitmapCache(DEFAULT_MAX_BITMAP_BYTES);
+
+    /**
+     * Opens a stream containing the contents of the given Asset, from the cache if possible.
+     * Assets larger than a quarter of the cache size are not cached.
+     *
+     * This must not be called from the main thread.
+     */
+    @Nullable static InputStream open(final Context context, final Asset asset) {
+        final String digest = asset.getDigest();
+        final LruCache<String, byte[]> cache = assets;
+        if(digest == null || cache == null) {
+            return Courier.openAssetInputStream(context, asset);
+        }
+
+        final byte[] cached = cache.get(digest);
+        if(cached != null) {
+            HITS.incrementAndGet();
+            return new ByteArrayInputStream(cached);
+        }
+
+        MISSES.incrementAndGet();
+        final InputStream in = Courier.openAssetInputStream(context, asset);
+        if(in == null) {
+            return null;
+        }
+
+        try {
+            final int maxEntryBytes = cache.maxSize() / 4;
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(READ_BUFFER_SIZE);
+            final byte[] buffer = new byte[READ_BUFFER_SIZE];
+            int read;
+            while((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+                if(out.size() > maxEntryBytes) {
+                    // Too large to cache, so give the caller what we've read so far followed by the rest of the stream
+                    return new SequenceInputStream(new ByteArrayInputStream(out.toByteArray()), in);
+                }
+            }
+            in.close();
+
+            final byte[] bytes = out.toByteArray();
+            cache.put(digest, bytes);
+            return new ByteArrayInputStream(bytes);
+        } catch (IOException e) {
+            try {
+                in.close();
+            } catch (IOException ignored) {
+                // Ignore
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Loads and decodes the given Asset as a Bitmap, from the cache if possible.
+     *
+     * This must not be called from the main thread.
+     */
+    @Nullable static Bitmap getBitmap(final Context context, final Asset asset) {
+        final String digest = asset.getDigest();
+        final LruCache<String, Bitmap> cache = bitmaps;
+        if(digest != null && cache != null) {
+            final Bitmap cached = cache.get(digest);
+            if(cached != null && !cached.isRecycled()) {
+                HITS.incrementAndGet();
+                return cached;
+            }
+            MISSES.incrementAndGet();
+        }
+
+        final InputStream in = open(context, asset);
+        if(in == null) {
+            return null;
+        }
+
+        final Bitmap bitmap = BitmapFactory.decodeStream(in);
+        try {
+            in.close();
+        } catch (IOException e) {
+            // Ignore
+        }
+
+        if(bitmap != null && digest != null && cache != null) {
+            cache.put(digest, bitmap);
+        }
+        return bitmap;
+    }
+
+    static void setMaxSize(final int maxAssetBytes, final int maxBitmapBytes) {
+        clear();
+        assets = createAssetCache(maxAssetBytes);
+        bitmaps = createBitmapCache(maxBitmapBytes);
+    }
+
+    static void clear() {
+        final LruCache<String, byte[]> assetCache = assets;
+        final LruCache<String, Bitmap> bitmapCache = bitmaps;
+        if(assetCache != null) {
+            assetCache.evictAll();
+        }
+        if(bitmapCache != null) {
+            bitmapCache.evictAll();
+        }
+    }
+
+    static AssetCacheStats getStats() {
+        final LruCache<String, byte[]> assetCache = assets;
+        final LruCache<String, Bitmap> bitmapCache = bitmaps;
+        return new AssetCacheStats(HITS.get(), MISSES.get(), EVICTIONS.get(),
+                assetCache == null ? 0 : assetCache.size(),
+                bitmapCache == null ? 0 : bitmapCache.size());
+    }
+
+    @Nullable private static LruCache<String, byte[]> createAssetCache(final int maxBytes) {
+        if(maxBytes <= 0) {
+            return null;
+        }
+
+        return new LruCache<String, byte[]>(maxBytes) {
+            @Override protected int sizeOf(String key, byte[] value) {
+                return value.length;
+            }
+
+            @Override protected void entryRemoved(boolean evicted, String key, byte[] oldValue, byte[] newValue) {
+                if(evicted) {
+                    EVICTIONS.incrementAndGet();
+                }
+            }
+        };
+    }
+
+    @Nullable private static LruCache<String, Bitmap> createBitmapCache(final int maxBytes) {
+        if(maxBytes <= 0) {
+            return null;
+        }
+
+        return new LruCache<String, Bitmap>(maxBytes) {
+            @Override protected int sizeOf(String key, Bitmap value) {
+                // getByteCount requires API 12
+                return value.getRowBytes() * value.getHeight();
+            }
+
+            @Override protected void entryRemoved(boolean evicted, String key, Bitmap oldValue, Bitmap newValue) {
+                if(evicted) {
+                    EVICTIONS.incrementAndGet();
+                }
+            }
+        };
+    }
+
+    private AssetCache(){}
+
+}
@@ -0,0 +1,52 @@
+package me.denley.courier;
+
+/**
+ * A snapshot of the statistics of the Asset cache (see {@link Courier#getAssetCacheStats}).
+ */
+public final class AssetCacheStats {
+
+    private final long hitCount;
+    private final long missCount;
+    private final long evictionCount;
+    private final int assetBytes;
+    private final int bitmapBytes;
+
+    AssetCacheStats(long hitCount, long missCount, long evictionCount, int assetBytes, int bitmapBytes) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+        this.assetBytes = assetBytes;
+        this.bitmapBytes = bitmapBytes;
+    }
+
+    /** @return The number of times an Asset or Bitmap was found in the cache. */
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    /** @return The number of times an Asset or Bitmap was not found in the cache, and had to be loaded. */
+    public long getMissCount() {
+        return missCount;
+    }
+
+    /** @return The number of Assets and Bitmaps that have been removed from the cache to make room for others. */
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /** @return The total size of the cached Assets, in bytes. */
+    public int getAssetBytes() {
+        return assetBytes;
+    }
+
+    /** @return The total size of the cached Bitmaps, in bytes. */
+    public int getBitmapBytes() {
+        return bitmapBytes;
+    }
+
+    @Override public String toString() {
+        return "AssetCacheStats{hits=" + hitCount + ", misses=" + missCount + ", evictions=" + evictionCount
+                + ", assetBytes=" + assetBytes + ", bitmapBytes=" + bitmapBytes + "}";
+    }
+
+}
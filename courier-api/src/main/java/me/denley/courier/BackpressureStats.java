@@ -0,0 +1,53 @@
+package me.denley.courier;
+
+/**
+ * A snapshot of the delivery counts of a {@link Backpressure} annotated recipient (see {@link Courier#getBackpressureStats}).
+ * The counts are totals for all objects that have received with the recipient.
+ */
+public final class BackpressureStats {
+
+    private final long deliveredCount;
+    private final long conflatedCount;
+    private final long droppedCount;
+    private final long blockedCount;
+    private final int maxQueued;
+
+    BackpressureStats(long deliveredCount, long conflatedCount, long droppedCount, long blockedCount, int maxQueued) {
+        this.deliveredCount = deliveredCount;
+        this.conflatedCount = conflatedCount;
+        this.droppedCount = droppedCount;
+        this.blockedCount = blockedCount;
+        this.maxQueued = maxQueued;
+    }
+
+    /** @return The number of deliveries made to the recipient. */
+    public long getDeliveredCount() {
+        return deliveredCount;
+    }
+
+    /** @return The number of deliveries replaced by a newer one, by {@link Backpressure.Policy#LATEST}. */
+    public long getConflatedCount() {
+        return conflatedCount;
+    }
+
+    /** @return The number of deliveries dropped because the recipient's queue was full. */
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+
+    /** @return The number of times a thread waited for room in the recipient's queue, by {@link Backpressure.Policy#BLOCK}. */
+    public long getBlockedCount() {
+        return blockedCount;
+    }
+
+    /** @return The largest number of deliveries that have been waiting for the recipient at once. */
+    public int getMaxQueued() {
+        return maxQueued;
+    }
+
+    @Override public String toString() {
+        return "BackpressureStats{delivered=" + deliveredCount + ", conflated=" + conflatedCount + ", dropped=" + droppedCount
+                + ", blocked=" + blockedCount + ", maxQueued=" + maxQueued + "}";
+    }
+
+}
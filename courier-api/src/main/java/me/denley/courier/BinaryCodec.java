@@ -0,0 +1,297 @@
+package me.denley.courier;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact binary format for common types that aren't annotated with {@link Deliverable}. This is much smaller and
+ * faster than the {@link java.io.Serializable} system, so it is used instead wherever possible.
+ *
+ * Supported types are null, Strings, boxed primitives, primitive arrays, String arrays, and ArrayLists, HashMaps, and
+ * LinkedHashMaps containing only supported types. Each value is written as a one byte type tag followed by its contents,
+ * so values are read back as exactly the same types.
+ */
+final class BinaryCodec {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final byte TYPE_NULL = 0;
+    private static final byte TYPE_STRING = 1;
+    private static final byte TYPE_BOOLEAN = 2;
+    private static final byte TYPE_BYTE = 3;
+    private static final byte TYPE_SHORT = 4;
+    private static final byte TYPE_INT = 5;
+    private static final byte TYPE_LONG = 6;
+    private static final byte TYPE_FLOAT = 7;
+    private static final byte TYPE_DOUBLE = 8;
+    private static final byte TYPE_CHAR = 9;
+    private static final byte TYPE_BYTE_ARRAY = 10;
+    private static final byte TYPE_INT_ARRAY = 11;
+    private static final byte TYPE_LONG_ARRAY = 12;
+    private static final byte TYPE_FLOAT_ARRAY = 13;
+    private static final byte TYPE_DOUBLE_ARRAY = 14;
+    private static final byte TYPE_BOOLEAN_ARRAY = 15;
+    private static final byte TYPE_STRING_ARRAY = 16;
+    private static final byte TYPE_ARRAY_LIST = 17;
+    private static final byte TYPE_HASH_MAP = 18;
+    private static final byte TYPE_LINKED_HASH_MAP = 19;
+
+    /**
+     * @return True if the given value (and everything it contains) can be written by this codec.
+     */
+    static boolean supports(Object value) {
+        if(value == null) {
+            return true;
+        }
+
+        final Class type = value.getClass();
+        if(type == String.class || type == Boolean.class || type == Byte.class || type == Short.class
+                || type == Integer.class || type == Long.class || type == Float.class || type == Double.class
+                || type == Character.class || type == byte[].class || type == int[].class || type == long[].class
+                || type == float[].class || type == double[].class || type == boolean[].class || type == String[].class) {
+            return true;
+        } else if (type == ArrayList.class) {
+            for(Object item:(List<?>) value) {
+                if(!supports(item)) {
+                    return false;
+                }
+            }
+            return true;
+        } else if (type == HashMap.class || type == LinkedHashMap.class) {
+            for(Map.Entry<?, ?> entry:((Map<?, ?>) value).entrySet()) {
+                if(!supports(entry.getKey()) || !supports(entry.getValue())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Writes the given value. Only values for which {@link #supports} returns true may be written.
+     */
+    static void write(DataOutput out, Object value) throws IOException {
+        if(value == null) {
+            out.writeByte(TYPE_NULL);
+            return;
+        }
+
+        final Class type = value.getClass();
+        if(type == String.class) {
+            out.writeByte(TYPE_STRING);
+            writeString(out, (String) value);
+        } else if (type == Boolean.class) {
+            out.writeByte(TYPE_BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (type == Byte.class) {
+            out.writeByte(TYPE_BYTE);
+            out.writeByte((Byte) value);
+        } else if (type == Short.class) {
+            out.writeByte(TYPE_SHORT);
+            out.writeShort((Short) value);
+        } else if (type == Integer.class) {
+            out.writeByte(TYPE_INT);
+            out.writeInt((Integer) value);
+        } else if (type == Long.class) {
+            out.writeByte(TYPE_LONG);
+            out.writeLong((Long) value);
+        } else if (type == Float.class) {
+            out.writeByte(TYPE_FLOAT);
+            out.writeFloat((Float) value);
+        } else if (type == Double.class) {
+            out.writeByte(TYPE_DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (type == Character.class) {
+            out.writeByte(TYPE_CHAR);
+            out.writeChar((Character) value);
+        } else if (type == byte[].class) {
+            final byte[] array = (byte[]) value;
+            out.writeByte(TYPE_BYTE_ARRAY);
+            out.writeInt(array.length);
+            out.write(array);
+        } else if (type == int[].class) {
+            final int[] array = (int[]) value;
+            out.writeByte(TYPE_INT_ARRAY);
+            out.writeInt(array.length);
+            for(int item:array) {
+                out.writeInt(item);
+            }
+        } else if (type == long[].class) {
+            final long[] array = (long[]) value;
+            out.writeByte(TYPE_LONG_ARRAY);
+            out.writeInt(array.length);
+            for(long item:array) {
+                out.writeLong(item);
+            }
+        } else if (type == float[].class) {
+            final float[] array = (float[]) value;
+            out.writeByte(TYPE_FLOAT_ARRAY);
+            out.writeInt(array.length);
+            for(float item:array) {
+                out.writeFloat(item);
+            }
+        } else if (type == double[].class) {
+            final double[] array = (double[]) value;
+            out.writeByte(TYPE_DOUBLE_ARRAY);
+            out.writeInt(array.length);
+            for(double item:array) {
+                out.writeDouble(item);
+            }
+        } else if (type == boolean[].class) {
+            final boolean[] array = (boolean[]) value;
+            out.writeByte(TYPE_BOOLEAN_ARRAY);
+            out.writeInt(array.length);
+            for(boolean item:array) {
+                out.writeBoolean(item);
+            }
+        } else if (type == String[].class) {
+            final String[] array = (String[]) value;
+            out.writeByte(TYPE_STRING_ARRAY);
+            out.writeInt(array.length);
+            for(String item:array) {
+                out.writeBoolean(item != null);
+                if(item != null) {
+                    writeString(out, item);
+                }
+            }
+        } else if (type == ArrayList.class) {
+            final List<?> list = (List<?>) value;
+            out.writeByte(TYPE_ARRAY_LIST);
+            out.writeInt(list.size());
+            for(Object item:list) {
+                write(out, item);
+            }
+        } else if (type == HashMap.class || type == LinkedHashMap.class) {
+            final Map<?, ?> map = (Map<?, ?>) value;
+            out.writeByte(type == HashMap.class ? TYPE_HASH_MAP : TYPE_LINKED_HASH_MAP);
+            out.writeInt(map.size());
+            for(Map.Entry<?, ?> entry:map.entrySet()) {
+                write(out, entry.getKey());
+                write(out, entry.getValue());
+            }
+        } else {
+            throw new IllegalArgumentException("Unsupported type: " + type.getName());
+        }
+    }
+
+    /**
+     * Reads a value that was written by {@link #write}.
+     */
+    static Object read(DataInput in) throws IOException {
+        final byte type = in.readByte();
+        switch (type) {
+            case TYPE_NULL:
+                return null;
+            case TYPE_STRING:
+                return readString(in);
+            case TYPE_BOOLEAN:
+                return in.readBoolean();
+            case TYPE_BYTE:
+                return in.readByte();
+            case TYPE_SHORT:
+                return in.readShort();
+            case TYPE_INT:
+                return in.readInt();
+            case TYPE_LONG:
+                return in.readLong();
+            case TYPE_FLOAT:
+                return in.readFloat();
+            case TYPE_DOUBLE:
+                return in.readDouble();
+            case TYPE_CHAR:
+                return in.readChar();
+            case TYPE_BYTE_ARRAY: {
+                final byte[] array = new byte[in.readInt()];
+                in.readFully(array);
+                return array;
+            }
+            case TYPE_INT_ARRAY: {
+                final int[] array = new int[in.readInt()];
+                for(int i=0; i<array.length; i++) {
+                    array[i] = in.readInt();
+                }
+                return array;
+            }
+            case TYPE_LONG_ARRAY: {
+                final long[] array = new long[in.readInt()];
+                for(int i=0; i<array.length; i++) {
+                    array[i] = in.readLong();
+                }
+                return array;
+            }
+            case TYPE_FLOAT_ARRAY: {
+                final float[] array = new float[in.readInt()];
+                for(int i=0; i<array.length; i++) {
+                    array[i] = in.readFloat();
+                }
+                return array;
+            }
+            case TYPE_DOUBLE_ARRAY: {
+                final double[] array = new double[in.readInt()];
+                for(int i=0; i<array.length; i++) {
+                    array[i] = in.readDouble();
+                }
+                return array;
+            }
+            case TYPE_BOOLEAN_ARRAY: {
+                final boolean[] array = new boolean[in.readInt()];
+                for(int i=0; i<array.length; i++) {
+                    array[i] = in.readBoolean();
+                }
+                return array;
+            }
+            case TYPE_STRING_ARRAY: {
+                final String[] array = new String[in.readInt()];
+                for(int i=0; i<array.length; i++) {
+                    array[i] = in.readBoolean() ? readString(in) : null;
+                }
+                return array;
+            }
+            case TYPE_ARRAY_LIST: {
+                final int size = in.readInt();
+                final ArrayList<Object> list = new ArrayList<Object>(size);
+                for(int i=0; i<size; i++) {
+                    list.add(read(in));
+                }
+                return list;
+            }
+            case TYPE_HASH_MAP:
+            case TYPE_LINKED_HASH_MAP: {
+                final int size = in.readInt();
+                final Map<Object, Object> map = type == TYPE_HASH_MAP
+                        ? new HashMap<Object, Object>() : new LinkedHashMap<Object, Object>();
+                for(int i=0; i<size; i++) {
+                    final Object key = read(in);
+                    map.put(key, read(in));
+                }
+                return map;
+            }
+            default:
+                throw new IOException("Unknown type: " + type);
+        }
+    }
+
+    private static void writeString(DataOutput out, String value) throws IOException {
+        // Not writeUTF, as that is limited to 64KB
+        final byte[] bytes = value.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        final byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private BinaryCodec(){}
+
+}
@@ -0,0 +1,44 @@
+package me.denley.courier;
+
+import com.google.android.gms.common.api.Releasable;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the data buffers (DataEventBuffers and DataItemBuffers) that Courier has been given by the Wearable APIs.
+ *
+ * A buffer keeps its data in shared memory until it is released, so each one is released as soon as its items
+ * have been decoded (or frozen). The outstanding count should return to zero whenever no events are being delivered.
+ */
+final class BufferCounter {
+
+    private static final AtomicInteger OUTSTANDING = new AtomicInteger();
+
+    private static final AtomicLong RELEASED = new AtomicLong();
+
+    /** Records that a buffer has been given to Courier, which must later be passed to {@link #release}. */
+    static void acquired() {
+        OUTSTANDING.incrementAndGet();
+    }
+
+    static void release(final Releasable buffer) {
+        try {
+            buffer.release();
+        } finally {
+            OUTSTANDING.decrementAndGet();
+            RELEASED.incrementAndGet();
+        }
+    }
+
+    static int getOutstandingCount() {
+        return OUTSTANDING.get();
+    }
+
+    static long getReleasedCount() {
+        return RELEASED.get();
+    }
+
+    private BufferCounter(){}
+
+}
@@ -0,0 +1,98 @@
+package me.denley.courier;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Buffers that are reused by each thread when encoding objects, so that sending an object doesn't allocate
+ * (and then throw away) intermediate buffers. In the steady state, the only allocation made by encoding is the final
+ * payload array (sending it still allocates its {@link Receipt}, and the task that makes the API call).
+ *
+ * Buffers that have grown larger than {@link #MAX_POOLED_SIZE} are not kept, so that a single large payload
+ * doesn't hold on to memory for the lifetime of the thread.
+ */
+final class BufferPool {
+
+    static final int MAX_POOLED_SIZE = 64 * 1024;
+
+    private static final int INITIAL_SIZE = 1024;
+
+    private static final ThreadLocal<ByteBuffer> BUFFERS = new ThreadLocal<ByteBuffer>();
+
+    private static final ThreadLocal<PooledStream> STREAMS = new ThreadLocal<PooledStream>();
+
+    /**
+     * A reusable output stream. It must be given back with {@link #release} once its contents have been copied.
+     *
+     * If an object being written by one stream is itself encoded (for example, by a custom writeObject method),
+     * a new stream is created for it instead of reusing the one that is in use.
+     */
+    static final class PooledStream extends ByteArrayOutputStream {
+
+        final DataOutputStream data = new DataOutputStream(this);
+
+        private boolean inUse = false;
+
+        PooledStream() {
+            super(INITIAL_SIZE);
+        }
+
+        void release() {
+            inUse = false;
+            if(buf.length > MAX_POOLED_SIZE) {
+                STREAMS.remove();
+            }
+        }
+
+    }
+
+    /**
+     * The returned buffer is only valid until the next call to this method on the same thread, so it must not
+     * be used to encode anything else until its contents have been copied.
+     *
+     * @return An empty buffer with at least the given capacity.
+     */
+    static ByteBuffer obtainBuffer(final int capacity) {
+        if(capacity > MAX_POOLED_SIZE) {
+            return ByteBuffer.allocate(capacity);
+        }
+
+        ByteBuffer buffer = BUFFERS.get();
+        if(buffer == null || buffer.capacity() < capacity) {
+            int size = INITIAL_SIZE;
+            while (size < capacity) {
+                size *= 2;
+            }
+            buffer = ByteBuffer.allocate(size);
+            BUFFERS.set(buffer);
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    /** @return A new array containing the bytes written to the given buffer (up to its position). */
+    static byte[] toByteArray(final ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.position()];
+        System.arraycopy(buffer.array(), buffer.arrayOffset(), bytes, 0, bytes.length);
+        return bytes;
+    }
+
+    /** @return An empty stream, which must be given back with {@link PooledStream#release}. */
+    static PooledStream obtainStream() {
+        PooledStream stream = STREAMS.get();
+        if(stream == null) {
+            stream = new PooledStream();
+            STREAMS.set(stream);
+        } else if (stream.inUse) {
+            return new PooledStream();
+        }
+
+        stream.reset();
+        stream.inUse = true;
+        return stream;
+    }
+
+    private BufferPool(){}
+
+}
@@ -0,0 +1,146 @@
+package me.denley.courier;
+
+import android.support.annotation.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses payloads on the paths (or of the classes) that compression has been enabled for, using
+ * {@link Courier#enableCompression}.
+ *
+ * Payloads are compressed with a Deflater at its fastest level, as sending bytes to a wearable device takes
+ * much longer than compressing them. Each thread reuses its own Deflater and Inflater.
+ */
+final class Compressor {
+
+    /**
+     * The most that the deflate format can compress data by (each 258 byte match takes at least 2 bits).
+     * A claimed original length beyond this is corrupt, so it's rejected before anything is allocated for it.
+     */
+    private static final int MAX_DEFLATE_RATIO = 1032;
+
+    private static final Map<String, Integer> PATH_THRESHOLDS = new ConcurrentHashMap<String, Integer>();
+
+    private static final Map<Class, Integer> CLASS_THRESHOLDS = new ConcurrentHashMap<Class, Integer>();
+
+    private static final ThreadLocal<Deflater> DEFLATERS = new ThreadLocal<Deflater>() {
+        @Override protected Deflater initialValue() {
+            return new Deflater(Deflater.BEST_SPEED);
+        }
+    };
+
+    private static final ThreadLocal<Inflater> INFLATERS = new ThreadLocal<Inflater>() {
+        @Override protected Inflater initialValue() {
+            return new Inflater();
+        }
+    };
+
+    static void enable(final String path, final int minBytes) {
+        PATH_THRESHOLDS.put(path, checkThreshold(minBytes));
+    }
+
+    static void enable(final Class type, final int minBytes) {
+        CLASS_THRESHOLDS.put(type, checkThreshold(minBytes));
+    }
+
+    static void disable(final String path) {
+        PATH_THRESHOLDS.remove(path);
+    }
+
+    static void disable(final Class type) {
+        CLASS_THRESHOLDS.remove(type);
+    }
+
+    private static int checkThreshold(final int minBytes) {
+        if(minBytes < 0) {
+            throw new IllegalArgumentException("The compression threshold must not be negative");
+        }
+        return minBytes;
+    }
+
+    /**
+     * A threshold set for the path takes precedence over one set for the class of the object.
+     *
+     * @return The size (in bytes) above which payloads of the given object should be compressed,
+     * or -1 if they should not be compressed.
+     */
+    static int getThreshold(@Nullable final String path, final Object data) {
+        if(path != null) {
+            final Integer threshold = PATH_THRESHOLDS.get(path);
+            if(threshold != null) {
+                return threshold;
+            }
+        }
+        if(CLASS_THRESHOLDS.isEmpty()) {
+            return -1;
+        }
+
+        final Integer threshold = CLASS_THRESHOLDS.get(data.getClass());
+        return threshold == null ? -1 : threshold;
+    }
+
+    /**
+     * @param input The bytes to compress.
+     * @param prefixLength The number of bytes to leave empty before the compressed bytes, for the caller's header.
+     * @return The compressed bytes, following the empty prefix, or null if compressing the input doesn't make it smaller.
+     */
+    @Nullable static byte[] deflate(final byte[] input, final int prefixLength) {
+        if(input.length <= prefixLength) {
+            return null;
+        }
+
+        final Deflater deflater = DEFLATERS.get();
+        deflater.reset();
+        deflater.setInput(input);
+        deflater.finish();
+
+        // Anything that doesn't fit in the input's size isn't worth sending
+        final ByteBuffer buffer = BufferPool.obtainBuffer(input.length);
+        final int length = deflater.deflate(buffer.array(), prefixLength, input.length - prefixLength);
+        if(!deflater.finished()) {
+            return null;
+        }
+
+        final byte[] output = new byte[prefixLength + length];
+        System.arraycopy(buffer.array(), prefixLength, output, prefixLength, length);
+        return output;
+    }
+
+    /**
+     * @param input The array containing the compressed bytes.
+     * @param offset The position of the compressed bytes in the array.
+     * @param originalLength The length of the bytes before they were compressed.
+     * @return The decompressed bytes.
+     * @throws IllegalArgumentException If the original length is negative or impossibly large, or the
+     * compressed bytes are truncated or corrupt.
+     */
+    static byte[] inflate(final byte[] input, final int offset, final int originalLength) {
+        final int compressedLength = input.length - offset;
+        if(originalLength < 0 || originalLength > (long) compressedLength * MAX_DEFLATE_RATIO) {
+            throw new IllegalArgumentException("Compressed data has an invalid length: " + originalLength);
+        }
+
+        final Inflater inflater = INFLATERS.get();
+        inflater.reset();
+        inflater.setInput(input, offset, compressedLength);
+
+        final byte[] output = new byte[originalLength];
+        try {
+            final int length = inflater.inflate(output);
+            if(length != originalLength || !inflater.finished()) {
+                throw new IllegalArgumentException("Compressed data is truncated or corrupt");
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Unable to decompress data", e);
+        }
+        return output;
+    }
+
+    private Compressor(){}
+
+}
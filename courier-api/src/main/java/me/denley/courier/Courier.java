@@ -10,10 +10,14 @@ import android.os.Build;
 import android.os.Looper;
 import android.support.annotation.Nullable;
 import android.support.v4.app.Fragment;
+import android.util.Log;
 import android.view.View;
 
+import com.google.android.gms.common.api.CommonStatusCodes;
 import com.google.android.gms.common.api.GoogleApiClient;
 import com.google.android.gms.wearable.Asset;
+import com.google.android.gms.wearable.Channel;
+import com.google.android.gms.wearable.ChannelApi;
 import com.google.android.gms.wearable.DataApi;
 import com.google.android.gms.wearable.MessageApi;
 import com.google.android.gms.wearable.Node;
@@ -21,11 +25,16 @@ import com.google.android.gms.wearable.NodeApi;
 import com.google.android.gms.wearable.PutDataRequest;
 import com.google.android.gms.wearable.Wearable;
 
+import java.io.BufferedOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
-import java.util.LinkedHashMap;
+import java.io.OutputStream;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+import static me.denley.courier.WearableApis.CHANNEL;
 import static me.denley.courier.WearableApis.DATA;
 import static me.denley.courier.WearableApis.MESSAGE;
 import static me.denley.courier.WearableApis.NODE;
@@ -39,7 +48,7 @@ import static me.denley.courier.WearableApis.NODE;
 @SuppressWarnings("unused")
 public final class Courier {
 
-    private static final Map<Class, DeliveryBoy> DELIVERY_STAFF = new LinkedHashMap<Class, DeliveryBoy>();
+    private static final ConcurrentMap<Class, DeliveryBoy> DELIVERY_STAFF = new ConcurrentHashMap<Class, DeliveryBoy>();
 
     /** For use by generated code. Don't use this. */
     public interface DeliveryBoy<T> {
@@ -47,6 +56,12 @@ public final class Courier {
         void stopReceiving(T target);
     }
 
+    /** For use by generated code. Don't use this. */
+    public interface DeliveryIndex {
+        /** @return A new DeliveryBoy for the given class, or null if this index doesn't have one. */
+        @Nullable DeliveryBoy getDeliveryBoy(Class targetClass);
+    }
+
 
     /**
      * Determines whether or not the Wearable API is available to communicate with a paired device. If this method
@@ -77,41 +92,169 @@ public final class Courier {
     /**
      * Puts the given object to the specified path in the Wearable.DataApi.
      *
+     * If coalescing is enabled for the path (see {@link #enableDataCoalescing}), this may be delayed, or
+     * replaced by a newer object. If the packed object is identical to the last one put on the path, it is not
+     * put again (see {@link #setDataDeduplicationEnabled}).
+     *
      * This can be called safely from any thread (it will occur asynchronously).
      *
      * @param context   The Context used to connect to the wearable API.
      * @param path      The path on which to place the data.
      * @param data      The object to serialize and send to the wearable API on the given path.
+     * @return          A Receipt that completes when the data item has been put.
      */
-    public static void deliverData(final Context context, final String path, final Object data) {
-        WearableApis.makeWearableApiCall(context, DATA, new WearableApis.WearableApiRunnable() {
+    public static Receipt deliverData(final Context context, final String path, final Object data) {
+        final Receipt receipt = InFlightLimiter.data.start();
+        if(receipt.isDone() || DataCoalescer.offer(context, path, data, receipt)) {
+            return receipt;
+        }
+        putData(context, path, data, receipt);
+        return receipt;
+    }
+
+    static void putData(final Context context, final String path, final Object data, final Receipt receipt) {
+        WearableApis.makeWearableApiCall(context, DATA, path, receipt, new WearableApis.WearableApiRunnable() {
             @Override public void run(GoogleApiClient apiClient) {
+                final long packStart = Metrics.start();
                 final PutDataRequest request = Packager.pack(path, data);
-                WearableApis.DataApi.putDataItem(apiClient, request);
+                Metrics.record(path, PathMetrics.Stage.PACK, request.getData().length, packStart);
+                if(!DataDeduplicator.isUnchanged(path, request, receipt)) {
+                    receipt.track(WearableApis.DataApi.putDataItem(apiClient, request));
+                }
             }
         });
     }
 
+    /**
+     * Enables coalescing of data items put on the given path. When an item is put using {@link #deliverData},
+     * it is held back for the given interval. Only the newest item put on the path during that time is
+     * serialized and sent. This is useful for values that change faster than they can be synced (such as a
+     * playback position).
+     *
+     * @param path              The path on which to coalesce data items.
+     * @param intervalMillis    The time to hold back an item, in milliseconds.
+     */
+    public static void enableDataCoalescing(final String path, final long intervalMillis) {
+        DataCoalescer.enable(path, intervalMillis);
+    }
+
+    /**
+     * Disables coalescing of data items put on the given path. An item that is already being held back will still be sent.
+     *
+     * @param path The path on which to stop coalescing data items.
+     */
+    public static void disableDataCoalescing(final String path) {
+        DataCoalescer.disable(path);
+    }
+
+    /**
+     * Sets whether {@link #deliverData} skips data items that are identical to the last item put on the same path,
+     * so that delivering an unchanged object (for example, every time an Activity resumes) doesn't notify every
+     * connected device. This is disabled by default.
+     *
+     * Items are compared by a digest of their packed contents (and Assets), which is kept for each path until
+     * the path is deleted using {@link #deleteData}, or a deletion of the path is received by a
+     * {@link ReceiveData} recipient. If the data items put by this app may be deleted by another device while
+     * nothing is receiving data, an identical item put afterwards would be skipped, so this should be left disabled.
+     *
+     * @param enabled True to skip identical data items, false to always put them.
+     */
+    public static void setDataDeduplicationEnabled(final boolean enabled) {
+        DataDeduplicator.enabled = enabled;
+        if(!enabled) {
+            DataDeduplicator.clear();
+        }
+    }
+
+    /**
+     * @return The number of data items that were not put because they were identical to the last item put on
+     * the same path (see {@link #setDataDeduplicationEnabled}).
+     */
+    public static long getSkippedDataItemCount() {
+        return DataDeduplicator.getSkippedCount();
+    }
+
+    /**
+     * Enables compression of the messages and data items sent on the given path. Payloads that are at least the
+     * given size are compressed before they are sent, and are decompressed automatically when they are received.
+     * This is useful for text-heavy objects, as sending bytes to a wearable device is much slower than compressing them.
+     *
+     * Data items that contain Assets are never compressed. Compressed data items are not stored as a DataMap,
+     * so they must be read using {@link Packager#unpack(Context, com.google.android.gms.wearable.DataItem, Class)}
+     * rather than DataMapItem.
+     *
+     * @param path      The path on which to compress messages and data items.
+     * @param minBytes  The minimum size of a payload to compress, in bytes.
+     */
+    public static void enableCompression(final String path, final int minBytes) {
+        Compressor.enable(path, minBytes);
+    }
+
+    /**
+     * Enables compression of messages and data items containing objects of the given class (but not its subclasses),
+     * on any path. Compression settings for a path (see {@link #enableCompression(String, int)}) take precedence over this.
+     *
+     * @param type      The class of objects to compress.
+     * @param minBytes  The minimum size of a payload to compress, in bytes.
+     */
+    public static void enableCompression(final Class<?> type, final int minBytes) {
+        Compressor.enable(type, minBytes);
+    }
+
+    /**
+     * Disables compression of the messages and data items sent on the given path.
+     *
+     * @param path The path on which to stop compressing payloads.
+     */
+    public static void disableCompression(final String path) {
+        Compressor.disable(path);
+    }
+
+    /**
+     * Disables compression of objects of the given class.
+     *
+     * @param type The class of objects to stop compressing.
+     */
+    public static void disableCompression(final Class<?> type) {
+        Compressor.disable(type);
+    }
+
     /**
      * Sends the given object as a message to all other connected devices
      *
+     * The message is sent to every device at once. If no devices are connected, the object is not serialized.
+     *
      * This can be called safely from any thread (it will occur asynchronously).
      *
      * @param context   The Context used to connect to the wearable API.
      * @param path      The path on which to send the message.
      * @param data      The object to serialize and send.
+     * @return          A Receipt that completes when the message has been sent to every device
+     *                  (or immediately, if no devices are connected).
      */
-    public static void deliverMessage(final Context context, final String path, final Object data) {
-        WearableApis.makeWearableApiCall(context, MESSAGE | NODE, new WearableApis.WearableApiRunnable() {
+    public static Receipt deliverMessage(final Context context, final String path, final Object data) {
+        final Receipt receipt = InFlightLimiter.messages.start();
+        if(receipt.isDone()) {
+            return receipt;
+        }
+
+        WearableApis.makeWearableApiCall(context, MESSAGE | NODE, path, receipt, new WearableApis.WearableApiRunnable() {
             @Override public void run(GoogleApiClient apiClient) {
-                final byte[] bytes = Packager.packBytes(data);
+                final List<Node> nodes = NodeTopology.getConnectedNodes(apiClient);
+                if (nodes.isEmpty()) {
+                    return;
+                }
 
-                final List<Node> nodes = WearableApis.NodeApi.getConnectedNodes(apiClient).await().getNodes();
+                // sendMessage doesn't block, so this doesn't wait for each node before sending to the next
+                final long packStart = Metrics.start();
+                final byte[] bytes = Packager.packBytes(path, data);
+                Metrics.record(path, PathMetrics.Stage.PACK, bytes.length, packStart);
                 for (Node node : nodes) {
-                    WearableApis.MessageApi.sendMessage(apiClient, node.getId(), path, bytes);
+                    MessageBatcher.add(context, apiClient, path, node.getId(), bytes, receipt);
                 }
             }
         });
+        return receipt;
     }
 
     /**
@@ -124,14 +267,173 @@ public final class Courier {
      * @param path      The path on which to send the message.
      * @param destinationNodeId The ID of the destination node.
      * @param data      The object to serialize and send.
+     * @return          A Receipt that completes when the message has been sent.
      */
-    public static void deliverMessage(final Context context, final String path, final String destinationNodeId, final Object data) {
-        WearableApis.makeWearableApiCall(context, MESSAGE, new WearableApis.WearableApiRunnable() {
+    public static Receipt deliverMessage(final Context context, final String path, final String destinationNodeId, final Object data) {
+        final Receipt receipt = InFlightLimiter.messages.start();
+        if(receipt.isDone()) {
+            return receipt;
+        }
+
+        WearableApis.makeWearableApiCall(context, MESSAGE, path, receipt, new WearableApis.WearableApiRunnable() {
             @Override public void run(GoogleApiClient apiClient) {
-                final byte[] bytes = Packager.packBytes(data);
-                WearableApis.MessageApi.sendMessage(apiClient, destinationNodeId, path, bytes);
+                final long packStart = Metrics.start();
+                final byte[] bytes = Packager.packBytes(path, data);
+                Metrics.record(path, PathMetrics.Stage.PACK, bytes.length, packStart);
+                MessageBatcher.add(context, apiClient, path, destinationNodeId, bytes, receipt);
             }
         });
+        return receipt;
+    }
+
+    /**
+     * Enables batching of messages sent on the given path. Messages sent to the same device on this path are
+     * held back, and sent together as a single message once the batching window has passed (or the batch
+     * has reached the maximum size). This reduces the per-message overhead when sending many small messages.
+     *
+     * Batches are split up on the receiving device, so {@link ReceiveMessages} recipients receive each message
+     * individually, in the order they were sent. Receivers using a WearableListenerService should use
+     * {@link Packager#unbatch} to split up the batches.
+     *
+     * @param path          The path on which to batch messages.
+     * @param windowMillis  The maximum time to hold back a message, in milliseconds.
+     * @param maxBatchBytes The size (in bytes) at which a batch is sent immediately.
+     */
+    public static void enableMessageBatching(final String path, final long windowMillis, final int maxBatchBytes) {
+        MessageBatcher.enable(path, windowMillis, maxBatchBytes);
+    }
+
+    /**
+     * Disables batching of messages sent on the given path. Messages that have already been batched will still be sent.
+     *
+     * @param path The path on which to stop batching messages.
+     */
+    public static void disableMessageBatching(final String path) {
+        MessageBatcher.disable(path);
+    }
+
+    /**
+     * Sends the given object to all other connected devices, through a Channel.
+     *
+     * Unlike {@link #deliverMessage}, the object is not limited in size by the MessageApi. An ArrayList of
+     * {@link Deliverable} objects is written one element at a time, so the whole list is never packed in memory
+     * at once. Other objects are packed in memory before they are written.
+     * The object is received by {@link ReceiveMessages} recipients, in the same way as a message.
+     *
+     * Channel transfers run on their own threads, so a large object doesn't hold up other Wearable API calls.
+     * If no devices are connected, the object is not serialized.
+     *
+     * This can be called safely from any thread (it will occur asynchronously).
+     *
+     * @param context   The Context used to connect to the wearable API.
+     * @param path      The path on which to send the object.
+     * @param data      The object to serialize and send.
+     * @return          A Receipt that completes when the object has been sent to every device
+     *                  (or immediately, if no devices are connected).
+     */
+    public static Receipt deliverStream(final Context context, final String path, final Object data) {
+        final Receipt receipt = InFlightLimiter.messages.start();
+        if(receipt.isDone()) {
+            return receipt;
+        }
+
+        WearableApis.makeWearableApiCall(context, CHANNEL | NODE, path, receipt, new WearableApis.WearableApiRunnable() {
+            @Override public void run(GoogleApiClient apiClient) {
+                for (Node node : NodeTopology.getConnectedNodes(apiClient)) {
+                    startStream(apiClient, path, node.getId(), data, receipt);
+                }
+            }
+        });
+        return receipt;
+    }
+
+    /**
+     * Sends the given object to a single connected device, through a Channel (see {@link #deliverStream(Context, String, Object)}).
+     * If the destination device is not connected, the object will not be sent.
+     *
+     * This can be called safely from any thread (it will occur asynchronously).
+     *
+     * @param context   The Context used to connect to the wearable API.
+     * @param path      The path on which to send the object.
+     * @param destinationNodeId The ID of the destination node.
+     * @param data      The object to serialize and send.
+     * @return          A Receipt that completes when the object has been sent.
+     */
+    public static Receipt deliverStream(final Context context, final String path, final String destinationNodeId, final Object data) {
+        final Receipt receipt = InFlightLimiter.messages.start();
+        if(receipt.isDone()) {
+            return receipt;
+        }
+
+        WearableApis.makeWearableApiCall(context, CHANNEL, path, receipt, new WearableApis.WearableApiRunnable() {
+            @Override public void run(GoogleApiClient apiClient) {
+                startStream(apiClient, path, destinationNodeId, data, receipt);
+            }
+        });
+        return receipt;
+    }
+
+    /** Streams the object to the given node on a transfer thread, as one part of the Receipt's operation. */
+    private static void startStream(final GoogleApiClient apiClient, final String path, final String nodeId,
+                                    final Object data, final Receipt receipt) {
+        receipt.addPart();
+        final boolean accepted = WorkerPool.executeTransfer(path, new Runnable() {
+            @Override public void run() {
+                boolean sent = false;
+                try {
+                    sent = stream(apiClient, path, nodeId, data);
+                } finally {
+                    if(sent) {
+                        receipt.completePart(null);
+                    } else {
+                        receipt.fail(CommonStatusCodes.ERROR);
+                    }
+                }
+            }
+        });
+
+        if(!accepted) {
+            receipt.fail(Receipt.STATUS_REJECTED);
+        }
+    }
+
+    /** Writes the object to a new channel to the given node. Blocks until it has been written. */
+    private static boolean stream(final GoogleApiClient apiClient, final String path, final String nodeId, final Object data) {
+        final ChannelApi.OpenChannelResult opened = WearableApis.ChannelApi.openChannel(apiClient, nodeId, path).await();
+        final Channel channel = opened.getChannel();
+        if(!opened.getStatus().isSuccess() || channel == null) {
+            return false;
+        }
+
+        Channel.GetOutputStreamResult result = null;
+        OutputStream out = null;
+        try {
+            result = channel.getOutputStream(apiClient).await();
+            if(!result.getStatus().isSuccess()) {
+                return false;
+            }
+
+            out = new BufferedOutputStream(result.getOutputStream(), StreamReceiver.BUFFER_SIZE);
+            Packager.pack(data, out);
+            out.close();
+            out = null;
+            return true;
+        } catch (IOException e) {
+            Log.w("Courier", "Unable to stream object on path " + path, e);
+            return false;
+        } finally {
+            if(out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // Ignore
+                }
+            }
+            if(result != null) {
+                result.release();
+            }
+            channel.close(apiClient);
+        }
     }
 
     /**
@@ -141,9 +443,10 @@ public final class Courier {
      *
      * @param context The Context used to connect to the wearable API.
      * @param path The path on which to delete every data item.
+     * @return A Receipt that completes when the data items have been deleted.
      */
-    public static void deleteData(final Context context, final String path) {
-        deleteData(context, path, null);
+    public static Receipt deleteData(final Context context, final String path) {
+        return deleteData(context, path, null);
     }
 
     /**
@@ -155,10 +458,24 @@ public final class Courier {
      * @param context The Context used to connect to the wearable API.
      * @param path The path on which to delete the data item
      * @param nodeId The node that created the data item to be removed.
+     * @return A Receipt that completes when the data item has been deleted.
      */
-    public static void deleteData(final Context context, final String path, final String nodeId) {
-        WearableApis.makeWearableApiCall(context, DATA, new WearableApis.WearableApiRunnable() {
+    public static Receipt deleteData(final Context context, final String path, final String nodeId) {
+        if(nodeId == null) {
+            // Don't let a data item that is being held back replace the deleted items
+            DataCoalescer.cancel(path);
+        }
+
+        final Receipt receipt = InFlightLimiter.data.start();
+        if(receipt.isDone()) {
+            return receipt;
+        }
+
+        WearableApis.makeWearableApiCall(context, DATA, path, receipt, new WearableApis.WearableApiRunnable() {
             @Override public void run(GoogleApiClient apiClient) {
+                // The next item put on the path must not be skipped as a duplicate of the deleted one
+                DataDeduplicator.forget(path);
+
                 final Uri.Builder uri = new Uri.Builder();
                 uri.scheme("wear");
                 uri.encodedPath(path);
@@ -166,9 +483,57 @@ public final class Courier {
                     uri.encodedAuthority(nodeId);
                 }
 
-                WearableApis.DataApi.deleteDataItems(apiClient, uri.build());
+                receipt.track(WearableApis.DataApi.deleteDataItems(apiClient, uri.build()));
             }
         });
+        return receipt;
+    }
+
+    /**
+     * Limits the number of data operations ({@link #deliverData} and {@link #deleteData}) that may be in flight at once.
+     * An operation is in flight until its {@link Receipt} completes.
+     *
+     * When the limit is reached, further operations either block until an earlier one completes, or are
+     * rejected (their Receipt fails with {@link Receipt#STATUS_REJECTED}). Operations started on the main
+     * thread are never blocked, and are always rejected when the limit is reached.
+     *
+     * @param maxInFlight   The maximum number of data operations in flight, or 0 for no limit (the default).
+     * @param blockWhenFull True to block when the limit is reached, false to reject.
+     */
+    public static void setDataInFlightLimit(final int maxInFlight, final boolean blockWhenFull) {
+        InFlightLimiter.data = new InFlightLimiter(maxInFlight, blockWhenFull);
+    }
+
+    /**
+     * Limits the number of messages ({@link #deliverMessage}) that may be in flight at once.
+     * A message is in flight until its {@link Receipt} completes.
+     *
+     * When the limit is reached, further messages either block until an earlier one completes, or are
+     * rejected (their Receipt fails with {@link Receipt#STATUS_REJECTED}). Messages sent from the main
+     * thread are never blocked, and are always rejected when the limit is reached.
+     *
+     * @param maxInFlight   The maximum number of messages in flight, or 0 for no limit (the default).
+     * @param blockWhenFull True to block when the limit is reached, false to reject.
+     */
+    public static void setMessageInFlightLimit(final int maxInFlight, final boolean blockWhenFull) {
+        InFlightLimiter.messages = new InFlightLimiter(maxInFlight, blockWhenFull);
+    }
+
+    /**
+     * @return The number of data operations in flight, counted against the limit set by {@link #setDataInFlightLimit}
+     * (or 0 if there is no limit). This returns to zero once every operation's Receipt has completed, including
+     * operations that were superseded or rejected.
+     */
+    public static int getDataInFlightCount() {
+        return InFlightLimiter.data.getInFlightCount();
+    }
+
+    /**
+     * @return The number of messages in flight, counted against the limit set by {@link #setMessageInFlightLimit}
+     * (or 0 if there is no limit).
+     */
+    public static int getMessageInFlightCount() {
+        return InFlightLimiter.messages.getInFlightCount();
     }
 
     /**
@@ -199,6 +564,8 @@ public final class Courier {
      * Retrieves and returns an InputStream for reading the data from an Asset. This must not be called
      * on the main thread.
      *
+     * Asset contents are cached (see {@link #setAssetCacheSize}), so reading the same Asset again is fast.
+     *
      * @param context The Context used to connect to the wearable API.
      * @param asset The asset to open a stream for.
      * @return An InputStream containing the data for the given asset, or null if the Wearable API is unavailable.
@@ -208,6 +575,11 @@ public final class Courier {
             throw new IllegalStateException("getAssetInputStream can not be called from the UI thread");
         }
 
+        return AssetCache.open(context, asset);
+    }
+
+    /** Opens the given Asset through the DataApi, bypassing the cache. */
+    @Nullable static InputStream openAssetInputStream(final Context context, final Asset asset) {
         if(WearableApis.hasMockDataApi()) {
             return WearableApis.DataApi.getFdForAsset(null, asset).await().getInputStream();
         }
@@ -220,6 +592,80 @@ public final class Courier {
         }
     }
 
+    /**
+     * Sets the maximum sizes of the Asset cache. Asset contents (from {@link #getAssetInputStream}) and
+     * decoded Bitmaps (for Bitmap fields in {@link Deliverable} classes) are cached separately, keyed by
+     * the Asset's digest. This clears the cache.
+     *
+     * By default, up to 1MB of Asset contents and 4MB of Bitmaps are cached.
+     *
+     * @param maxAssetBytes  The maximum total size of cached Asset contents, in bytes, or 0 to disable caching them.
+     * @param maxBitmapBytes The maximum total size of cached Bitmaps, in bytes, or 0 to disable caching them.
+     */
+    public static void setAssetCacheSize(final int maxAssetBytes, final int maxBitmapBytes) {
+        AssetCache.setMaxSize(maxAssetBytes, maxBitmapBytes);
+    }
+
+    /**
+     * Removes all Asset contents and Bitmaps from the Asset cache.
+     */
+    public static void clearAssetCache() {
+        AssetCache.clear();
+    }
+
+    /**
+     * @return A snapshot of the Asset cache's hit, miss, and eviction counts, and its current size.
+     */
+    public static AssetCacheStats getAssetCacheStats() {
+        return AssetCache.getStats();
+    }
+
+    /**
+     * @return A snapshot of the delivery counts of each {@link Backpressure} annotated recipient that has been
+     * delivered to, keyed by the recipient's name (including its declaring class, for example "com.example.Foo.onBar").
+     * These can be used to choose the capacity of each recipient's queue.
+     */
+    public static Map<String, BackpressureStats> getBackpressureStats() {
+        return Mailbox.getStats();
+    }
+
+    /**
+     * @return The number of data buffers (DataEventBuffers and DataItemBuffers) that Courier has been given by the
+     * DataApi and has not yet released. This should be zero whenever data items aren't being delivered.
+     */
+    public static int getOutstandingBufferCount() {
+        return BufferCounter.getOutstandingCount();
+    }
+
+    /**
+     * @return The total number of data buffers that Courier has released.
+     */
+    public static long getReleasedBufferCount() {
+        return BufferCounter.getReleasedCount();
+    }
+
+    /**
+     * @return A snapshot of the metrics of each path that Courier has sent or received on, keyed by path. Each
+     * {@link PathMetrics} has the count, payload size, and latency histogram of each stage of the path's work.
+     * Work that isn't on a particular path (and any paths beyond the first 256) is counted under "(other)".
+     */
+    public static Map<String, PathMetrics> getMetrics() {
+        return Metrics.getSnapshot();
+    }
+
+    /**
+     * Enables or disables the collection of metrics (see {@link #getMetrics}). Metrics are enabled by default.
+     * Recording them doesn't allocate anything, so they are cheap enough to leave enabled in production.
+     */
+    public static void setMetricsEnabled(final boolean enabled) {
+        Metrics.setEnabled(enabled);
+    }
+
+    /** Clears the metrics collected so far. */
+    public static void resetMetrics() {
+        Metrics.reset();
+    }
+
     /**
      * Starts receiving message, data, an device connection events on a target object.
      * Be sure to call {@link #stopReceiving} when you no longer want to receive updates.
@@ -306,32 +752,54 @@ public final class Courier {
     }
 
 
-    private static <T> DeliveryBoy<T> findDeliveryBoy(Class targetClass) {
-        return findDeliveryBoy(targetClass, targetClass);
-    }
-
     @SuppressWarnings("unchecked")
-    private static <T> DeliveryBoy<T> findDeliveryBoy(Class targetClass, Class actualClass) {
+    private static <T> DeliveryBoy<T> findDeliveryBoy(Class targetClass) {
         DeliveryBoy<T> messenger = DELIVERY_STAFF.get(targetClass);
         if(messenger!=null) {
             return messenger;
         }
 
-        try {
-            final String messengerClassName = targetClass.getName() + "$$Delivery";
-            final Class messengerClass = Class.forName(messengerClassName);
-            messenger = (DeliveryBoy<T>)messengerClass.newInstance();
-        }catch (Exception e) {
-            Class superClass = targetClass.getSuperclass();
-            if(superClass==Object.class) {
-                throw new IllegalStateException("Courier not found for "+actualClass.getName()+". Missing annotations?");
-            } else {
-                messenger = findDeliveryBoy(superClass, actualClass);
+        // Use the DeliveryBoy of the closest class in the hierarchy that has one
+        for(Class candidate = targetClass; candidate!=null && candidate!=Object.class; candidate = candidate.getSuperclass()) {
+            messenger = DELIVERY_STAFF.get(candidate);
+            if(messenger==null) {
+                messenger = createDeliveryBoy(candidate);
+                if(messenger==null) {
+                    continue;
+                }
+
+                final DeliveryBoy<T> existing = DELIVERY_STAFF.putIfAbsent(candidate, messenger);
+                if(existing!=null) {
+                    messenger = existing;
+                }
             }
+
+            DELIVERY_STAFF.putIfAbsent(targetClass, messenger);
+            return messenger;
+        }
+
+        throw new IllegalStateException("Courier not found for "+targetClass.getName()+". Missing annotations?");
+    }
+
+    @Nullable private static DeliveryBoy createDeliveryBoy(Class targetClass) {
+        final DeliveryIndex index = (DeliveryIndex) GeneratedIndex.getIndex(targetClass, GeneratedIndex.DELIVERY_INDEX);
+        final DeliveryBoy messenger = index==null ? null : index.getDeliveryBoy(targetClass);
+        if(messenger!=null) {
+            return messenger;
         }
+        return (DeliveryBoy) GeneratedIndex.getGeneratedInstance(targetClass, "$$Delivery");
+    }
 
-        DELIVERY_STAFF.put(targetClass, messenger);
-        return messenger;
+    /**
+     * Sets the Dispatcher used to find the executors named by {@link ReceiveData#executor} and {@link ReceiveMessages#executor}.
+     *
+     * Any executor name that the Dispatcher does not provide (by returning null) falls back to one of Courier's built-in executors.
+     * This should be called before any calls to {@link #startReceiving}.
+     *
+     * @param dispatcher A custom Dispatcher, or null to use only the built-in executors.
+     */
+    public static void setDispatcher(@Nullable final Dispatcher dispatcher) {
+        WearableApis.dispatcher = dispatcher;
     }
 
     /**
@@ -0,0 +1,114 @@
+package me.denley.courier;
+
+import android.content.Context;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Coalesces data items put on the same path in quick succession, so that only the newest is sent.
+ *
+ * Coalescing is enabled for a path using {@link Courier#enableDataCoalescing}. The first data item put on
+ * the path is held back for the coalescing interval. Any items put on the path during that time replace
+ * it, and are never packed. When the interval has passed, the newest item is packed and put.
+ */
+final class DataCoalescer {
+
+    private static final Map<String, Long> INTERVALS = new ConcurrentHashMap<String, Long>();
+
+    /** The newest item waiting to be put on each path. All access must be synchronized on this map. */
+    private static final Map<String, PendingData> PENDING = new HashMap<String, PendingData>();
+
+    private static final class PendingData {
+        Context context;
+        Object data;
+        Receipt receipt;
+
+        PendingData(Context context, Object data, Receipt receipt) {
+            this.context = context;
+            this.data = data;
+            this.receipt = receipt;
+        }
+    }
+
+    static void enable(final String path, final long intervalMillis) {
+        if(intervalMillis <= 0) {
+            throw new IllegalArgumentException("The coalescing interval must be positive");
+        }
+        INTERVALS.put(path, intervalMillis);
+    }
+
+    static void disable(final String path) {
+        INTERVALS.remove(path);
+    }
+
+    /**
+     * Holds back the given data item if coalescing is enabled for the path.
+     *
+     * The Receipt of an item that is superseded fails with {@link Receipt#STATUS_SUPERSEDED}.
+     *
+     * @return True if the item will be put later (or has been superseded), or false if
+     * coalescing is not enabled for the path and the item should be put now.
+     */
+    static boolean offer(final Context context, final String path, final Object data, final Receipt receipt) {
+        final Long interval = INTERVALS.get(path);
+        if(interval == null) {
+            return false;
+        }
+
+        synchronized (PENDING) {
+            final PendingData pending = PENDING.get(path);
+            if(pending != null) {
+                // Supersede the waiting item
+                pending.receipt.fail(Receipt.STATUS_SUPERSEDED);
+                pending.context = context;
+                pending.data = data;
+                pending.receipt = receipt;
+                return true;
+            }
+
+            PENDING.put(path, new PendingData(context, data, receipt));
+        }
+
+        WorkerPool.schedule(path, new Runnable() {
+            @Override public void run() {
+                final PendingData newest;
+                synchronized (PENDING) {
+                    newest = PENDING.remove(path);
+                }
+                if(newest != null) {
+                    Courier.putData(newest.context, path, newest.data, newest.receipt);
+                }
+            }
+        }, interval, new Runnable() {
+            @Override public void run() {
+                // The item can't be put, so stop superseding into it and fail the newest one
+                final PendingData newest;
+                synchronized (PENDING) {
+                    newest = PENDING.remove(path);
+                }
+                if(newest != null) {
+                    newest.receipt.fail(Receipt.STATUS_REJECTED);
+                }
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Discards any item waiting to be put on the given path (for example, because the path is being deleted).
+     */
+    static void cancel(final String path) {
+        final PendingData pending;
+        synchronized (PENDING) {
+            pending = PENDING.remove(path);
+        }
+        if(pending != null) {
+            pending.receipt.fail(Receipt.STATUS_SUPERSEDED);
+        }
+    }
+
+    private DataCoalescer(){}
+
+}
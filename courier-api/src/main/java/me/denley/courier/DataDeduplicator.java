@@ -0,0 +1,136 @@
+package me.denley.courier;
+
+import com.google.android.gms.wearable.Asset;
+import com.google.android.gms.wearable.PutDataRequest;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Skips data items that are identical to the last item put on the same path.
+ *
+ * A digest of each packed data item (its DataMap or payload bytes, and its Assets) is kept for each path. If the
+ * next item put on a path has the same digest, the put is skipped, so peers aren't woken up by an item that
+ * hasn't changed. The digest of a path is forgotten when its data items are deleted (by this app, or by any
+ * device while a data listener is registered), or if a put fails.
+ *
+ * This is disabled by default, as a deletion made by another device is missed while no data listener is
+ * registered, and the next identical item would then be skipped.
+ */
+final class DataDeduplicator {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /** Returned by {@link #digest} for data items that can't be compared */
+    private static final long NO_DIGEST = 0;
+
+    private static final Map<String, Long> DIGESTS = new ConcurrentHashMap<String, Long>();
+
+    private static final AtomicLong SKIPPED = new AtomicLong();
+
+    static volatile boolean enabled = false;
+
+    /**
+     * Checks whether the given request is identical to the last data item put on the path. If it is not,
+     * it is remembered as the last data item on the path (until the given Receipt fails).
+     *
+     * @return True if the put should be skipped.
+     */
+    static boolean isUnchanged(final String path, final PutDataRequest request, final Receipt receipt) {
+        if(!enabled) {
+            return false;
+        }
+
+        final long digest = digest(request);
+        if(digest == NO_DIGEST) {
+            DIGESTS.remove(path);
+            return false;
+        }
+
+        final Long previous = DIGESTS.put(path, digest);
+        if(previous != null && previous == digest) {
+            SKIPPED.incrementAndGet();
+            return true;
+        }
+
+        receipt.addCallback(new Receipt.Callback() {
+            @Override public void onComplete(Receipt receipt) {
+                if(!receipt.isSuccess()) {
+                    // The peers may not have the item, so it must not be skipped next time
+                    forget(path, digest);
+                }
+            }
+        });
+        return false;
+    }
+
+    /** Forgets the last data item put on the given path, so that the next item is always put. */
+    static void forget(final String path) {
+        DIGESTS.remove(path);
+    }
+
+    private static void forget(final String path, final long digest) {
+        final Long current = DIGESTS.get(path);
+        if(current != null && current == digest) {
+            DIGESTS.remove(path);
+        }
+    }
+
+    static void clear() {
+        DIGESTS.clear();
+    }
+
+    static long getSkippedCount() {
+        return SKIPPED.get();
+    }
+
+    /**
+     * Computes a 64 bit FNV-1a hash of the data item's bytes and Assets.
+     *
+     * @return The digest, or {@link #NO_DIGEST} if the item contains an Asset whose contents aren't known
+     * (such as one created from a file descriptor).
+     */
+    private static long digest(final PutDataRequest request) {
+        long hash = hash(FNV_OFFSET_BASIS, request.getData());
+
+        final Map<String, Asset> assets = request.getAssets();
+        if(assets != null) {
+            // Combined by addition, as the order of the Assets isn't defined
+            for(Map.Entry<String, Asset> entry:assets.entrySet()) {
+                final Asset asset = entry.getValue();
+                long assetHash = hash(FNV_OFFSET_BASIS, entry.getKey());
+                if(asset.getDigest() != null) {
+                    assetHash = hash(assetHash, asset.getDigest());
+                } else if (asset.getData() != null) {
+                    assetHash = hash(assetHash, asset.getData());
+                } else {
+                    return NO_DIGEST;
+                }
+                hash += assetHash;
+            }
+        }
+        return hash == NO_DIGEST ? FNV_OFFSET_BASIS : hash;
+    }
+
+    private static long hash(long hash, final byte[] bytes) {
+        if(bytes != null) {
+            for(byte b:bytes) {
+                hash = (hash ^ (b & 0xff)) * FNV_PRIME;
+            }
+        }
+        return hash;
+    }
+
+    private static long hash(long hash, final String value) {
+        for(int i=0; i<value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+        }
+        // Separate consecutive strings
+        return (hash ^ 0xffff) * FNV_PRIME;
+    }
+
+    private DataDeduplicator(){}
+
+}
@@ -0,0 +1,146 @@
+package me.denley.courier;
+
+import android.net.Uri;
+import android.support.annotation.Nullable;
+
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.wearable.DataApi;
+import com.google.android.gms.wearable.DataItem;
+import com.google.android.gms.wearable.DataItemBuffer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Retrieves the existing data items on the paths that a class receives, so that they can be delivered
+ * when it starts receiving (or when a peer connects).
+ *
+ * Each path is retrieved with its own query (a prefix query, for a path pattern), rather than retrieving
+ * every data item on the device. Identical queries that are made at the same time share a single retrieval.
+ */
+final class DataSync {
+
+    /** The retrievals in progress, by query (see {@link #getQueries}) */
+    private static final Map<String, Fetch> IN_FLIGHT = new HashMap<String, Fetch>();
+
+    // Query prefixes, to tell literal paths from the prefixes of patterns
+    private static final char LITERAL = '=';
+    private static final char PREFIX = '*';
+
+    private static final class Fetch {
+        final CountDownLatch done = new CountDownLatch(1);
+        List<DataItem> items = Collections.emptyList();
+    }
+
+    /**
+     * Retrieves the data items on the given paths (which may be patterns). This blocks while they are retrieved.
+     *
+     * @return Frozen copies of the data items, which remain valid after the retrieval. The items on a path pattern
+     * include any item that begins with the literal part of the pattern, so they must still be matched against it.
+     */
+    static List<DataItem> getDataItems(@Nullable final GoogleApiClient apiClient, final String[] paths) {
+        final List<DataItem> items = new ArrayList<DataItem>();
+        for(String query:getQueries(paths)) {
+            items.addAll(fetch(apiClient, query));
+        }
+        return items;
+    }
+
+    /**
+     * @return The queries needed to retrieve the data items on the given paths. Queries that would only
+     * retrieve items that are retrieved by another prefix query are left out.
+     */
+    static List<String> getQueries(final String[] paths) {
+        final List<String> prefixes = new ArrayList<String>();
+        for(String path:paths) {
+            final String prefix = getPrefix(path);
+            if(prefix!=null && !prefixes.contains(prefix)) {
+                prefixes.add(prefix);
+            }
+        }
+
+        final List<String> queries = new ArrayList<String>();
+        for(String prefix:prefixes) {
+            if(!isCovered(prefix, prefixes, true)) {
+                queries.add(PREFIX + prefix);
+            }
+        }
+        for(String path:paths) {
+            if(getPrefix(path)==null && !isCovered(path, prefixes, false) && !queries.contains(LITERAL + path)) {
+                queries.add(LITERAL + path);
+            }
+        }
+        return queries;
+    }
+
+    /** @return The literal part of a path pattern, before its first captured segment, or null if it isn't a pattern. */
+    @Nullable static String getPrefix(final String path) {
+        if(!PathPattern.isPattern(path)) {
+            return null;
+        }
+
+        final int capture = path.indexOf('{');
+        return path.substring(0, capture == -1 ? path.length() - 1 : capture);
+    }
+
+    private static boolean isCovered(final String path, final List<String> prefixes, final boolean isPrefix) {
+        for(String prefix:prefixes) {
+            if(path.startsWith(prefix) && !(isPrefix && path.equals(prefix))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<DataItem> fetch(@Nullable final GoogleApiClient apiClient, final String query) {
+        final Fetch fetch;
+        final boolean isOwner;
+        synchronized (IN_FLIGHT) {
+            final Fetch existing = IN_FLIGHT.get(query);
+            isOwner = existing == null;
+            fetch = isOwner ? new Fetch() : existing;
+            if(isOwner) {
+                IN_FLIGHT.put(query, fetch);
+            }
+        }
+
+        if(!isOwner) {
+            try {
+                fetch.done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return fetch.items;
+        }
+
+        try {
+            final Uri uri = new Uri.Builder().scheme("wear").encodedPath(query.substring(1)).build();
+            final int filter = query.charAt(0) == PREFIX ? DataApi.FILTER_PREFIX : DataApi.FILTER_LITERAL;
+            final DataItemBuffer buffer = WearableApis.DataApi.getDataItems(apiClient, uri, filter).await();
+            BufferCounter.acquired();
+
+            final List<DataItem> items = new ArrayList<DataItem>(buffer.getCount());
+            try {
+                for(DataItem item:buffer) {
+                    items.add(item.freeze());
+                }
+            } finally {
+                BufferCounter.release(buffer);
+            }
+            fetch.items = Collections.unmodifiableList(items);
+        } finally {
+            synchronized (IN_FLIGHT) {
+                IN_FLIGHT.remove(query);
+            }
+            fetch.done.countDown();
+        }
+        return fetch.items;
+    }
+
+    private DataSync(){}
+
+}
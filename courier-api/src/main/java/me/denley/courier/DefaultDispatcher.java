@@ -0,0 +1,73 @@
+package me.denley.courier;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Courier's built-in executors. These are used for any name that the
+ * Dispatcher given to {@link Courier#setDispatcher} does not provide.
+ */
+final class DefaultDispatcher implements Dispatcher {
+
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    /** Batches its commands with the other main thread deliveries, see {@link MainThreadQueue} */
+    static final Executor MAIN_EXECUTOR = new Executor() {
+        @Override public void execute(Runnable command) {
+            MainThreadQueue.post(null, null, null, command);
+        }
+    };
+
+    private static final Executor CALLER_EXECUTOR = new Executor() {
+        @Override public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    // Created lazily, as most apps won't use them
+    private static class SerialHolder {
+        static final ExecutorService EXECUTOR = newPool("Courier-serial", 1);
+    }
+
+    private static class ComputeHolder {
+        static final ExecutorService EXECUTOR = newPool("Courier-compute",
+                Math.max(1, Runtime.getRuntime().availableProcessors()));
+    }
+
+    @Override public Executor getExecutor(final String name) {
+        if(MAIN.equals(name)) {
+            return MAIN_EXECUTOR;
+        } else if (CALLER.equals(name)) {
+            return CALLER_EXECUTOR;
+        } else if (SERIAL.equals(name)) {
+            return SerialHolder.EXECUTOR;
+        } else if (COMPUTE.equals(name)) {
+            return ComputeHolder.EXECUTOR;
+        } else {
+            return null;
+        }
+    }
+
+    private static ExecutorService newPool(final String name, final int threads) {
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override public Thread newThread(Runnable runnable) {
+                        final Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+}
@@ -0,0 +1,35 @@
+package me.denley.courier;
+
+import android.support.annotation.Nullable;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Provides the Executors on which callbacks are made to recipients that name an executor
+ * (using the executor attribute of {@link ReceiveData} or {@link ReceiveMessages}).
+ *
+ * A Dispatcher can be set using {@link Courier#setDispatcher}.
+ */
+public interface Dispatcher {
+
+    /** Posts callbacks to the main thread. */
+    String MAIN = "main";
+
+    /** Makes callbacks immediately, on the thread that received the event. */
+    String CALLER = "caller";
+
+    /** Makes callbacks one at a time, in order, on a single background thread. */
+    String SERIAL = "serial";
+
+    /** Makes callbacks on a pool of background threads, one for each CPU core. */
+    String COMPUTE = "compute";
+
+    /**
+     * Returns the Executor with the given name.
+     *
+     * @param name  The executor name given in the annotation.
+     * @return      The Executor to make callbacks on, or null to use Courier's built-in executor with that name.
+     */
+    @Nullable Executor getExecutor(String name);
+
+}
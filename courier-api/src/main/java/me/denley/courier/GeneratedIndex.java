@@ -0,0 +1,109 @@
+package me.denley.courier;
+
+import android.support.annotation.Nullable;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Finds the classes generated by the annotation processor for a target class.
+ *
+ * The processor writes an index class into each package that contains annotated classes. An index is loaded the
+ * first time a class in its package is looked up, and directly references the generated classes for that package
+ * (so they can't be removed by a code shrinker). A generated class that is missing from an index (for example, one
+ * generated in a later processing round) is looked up by name instead. Failed lookups are remembered, so each
+ * missing index or generated class costs at most one reflective lookup.
+ */
+final class GeneratedIndex {
+
+    /** The simple name of the index of {@link Courier.DeliveryBoy} classes in each package */
+    static final String DELIVERY_INDEX = "Courier$$DeliveryIndex";
+
+    /** The simple name of the index of {@link Packager.DataPackager} classes in each package */
+    static final String PACKAGER_INDEX = "Courier$$PackagerIndex";
+
+    /** Stands in for classes that could not be found or instantiated */
+    private static final Object MISSING = new Object();
+
+    /** Instantiated index classes (or MISSING), by fully qualified class name */
+    private static final ConcurrentMap<String, Object> INDEXES = new ConcurrentHashMap<String, Object>();
+
+    /** Generated class names that could not be instantiated */
+    private static final ConcurrentMap<String, Object> MISSING_CLASSES = new ConcurrentHashMap<String, Object>();
+
+    /**
+     * @return The instance of the index with the given simple name in the package of the given class,
+     * or null if that package has no such index.
+     */
+    @Nullable static Object getIndex(final Class targetClass, final String indexName) {
+        return getIndex(targetClass.getName(), targetClass.getClassLoader(), indexName);
+    }
+
+    /**
+     * Finds an index by the name of a target class, without loading the target class. This is used for class
+     * names read from another device, so that the only class that may be loaded is the generated index.
+     *
+     * @return The instance of the index with the given simple name in the package of the named class,
+     * or null if that package has no such index.
+     */
+    @Nullable static Object getIndex(final String targetName, @Nullable final ClassLoader loader, final String indexName) {
+        final int lastDot = targetName.lastIndexOf('.');
+        final String indexClassName = lastDot==-1 ? indexName : targetName.substring(0, lastDot + 1) + indexName;
+
+        Object index = INDEXES.get(indexClassName);
+        if(index == null) {
+            index = instantiate(loader, indexClassName);
+            if(index == null) {
+                index = MISSING;
+            }
+            final Object existing = INDEXES.putIfAbsent(indexClassName, index);
+            if(existing != null) {
+                index = existing;
+            }
+        }
+        return index == MISSING ? null : index;
+    }
+
+    /**
+     * Instantiates the generated class for a target class by name, for targets that are missing from their index.
+     *
+     * @return A new instance of the generated class, or null if it does not exist.
+     */
+    @Nullable static Object getGeneratedInstance(final Class targetClass, final String suffix) {
+        return getGeneratedInstance(targetClass.getName(), targetClass.getClassLoader(), suffix);
+    }
+
+    /**
+     * Instantiates the generated class for a target class by the target's name, without loading the target class.
+     *
+     * @return A new instance of the generated class, or null if it does not exist.
+     */
+    @Nullable static Object getGeneratedInstance(final String targetName, @Nullable final ClassLoader loader, final String suffix) {
+        final String className = targetName + suffix;
+        if(MISSING_CLASSES.containsKey(className)) {
+            return null;
+        }
+
+        final Object instance = instantiate(loader, className);
+        if(instance == null) {
+            MISSING_CLASSES.put(className, MISSING);
+        }
+        return instance;
+    }
+
+    @Nullable private static Object instantiate(@Nullable final ClassLoader loader, final String className) {
+        try {
+            final Class generatedClass = loader == null ? Class.forName(className) : Class.forName(className, true, loader);
+            return generatedClass.newInstance();
+        } catch (ClassNotFoundException e) {
+            return null;
+        } catch (InstantiationException e) {
+            return null;
+        } catch (IllegalAccessException e) {
+            return null;
+        }
+    }
+
+    private GeneratedIndex(){}
+
+}
@@ -0,0 +1,66 @@
+package me.denley.courier;
+
+import android.os.Looper;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * Limits the number of operations on a Wearable API that may be in flight at once.
+ *
+ * An operation is in flight from the time that it is requested (e.g. by calling {@link Courier#deliverData})
+ * until its {@link Receipt} completes.
+ */
+final class InFlightLimiter {
+
+    static volatile InFlightLimiter data = new InFlightLimiter(0, false);
+    static volatile InFlightLimiter messages = new InFlightLimiter(0, false);
+
+    /** The permits for in-flight operations, or null if there is no limit */
+    private final Semaphore permits;
+    private final int maxInFlight;
+    private final boolean blockWhenFull;
+
+    /**
+     * @param maxInFlight   The maximum number of operations in flight, or 0 for no limit.
+     * @param blockWhenFull True to block the caller until an operation completes when the limit
+     *                      has been reached, or false to reject new operations.
+     */
+    InFlightLimiter(int maxInFlight, boolean blockWhenFull) {
+        if(maxInFlight < 0) {
+            throw new IllegalArgumentException("The in-flight limit must not be negative");
+        }
+        this.permits = maxInFlight == 0 ? null : new Semaphore(maxInFlight);
+        this.maxInFlight = maxInFlight;
+        this.blockWhenFull = blockWhenFull;
+    }
+
+    /**
+     * Starts a new operation, blocking first if necessary.
+     *
+     * The main thread never blocks. If the limit has been reached, operations started from the
+     * main thread are rejected.
+     *
+     * @return A Receipt for the new operation. If the operation was rejected, it will already have failed.
+     */
+    Receipt start() {
+        if(permits == null) {
+            return new Receipt(null);
+        }
+
+        if(blockWhenFull && Looper.myLooper()!=Looper.getMainLooper()) {
+            permits.acquireUninterruptibly();
+        } else if(!permits.tryAcquire()) {
+            return Receipt.failed(Receipt.STATUS_REJECTED);
+        }
+        return new Receipt(permits);
+    }
+
+    /**
+     * @return The number of operations that hold a permit, or 0 if there is no limit. Every operation's Receipt
+     * completes eventually (even when its call is rejected), so this returns to zero once nothing is being sent.
+     */
+    int getInFlightCount() {
+        return permits == null ? 0 : maxInFlight - permits.availablePermits();
+    }
+
+}
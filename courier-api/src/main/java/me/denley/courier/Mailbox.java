@@ -0,0 +1,236 @@
+package me.denley.courier;
+
+import android.os.Looper;
+import android.support.annotation.Nullable;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The queue of deliveries waiting for a {@link Backpressure} annotated recipient of one receiving object.
+ *
+ * Deliveries are made one at a time, in order, by running them on the recipient's executor (or, for recipients
+ * that are called on the thread that receives the event, by the first thread to find the queue idle).
+ * When the queue is full, the recipient's policy decides whether a delivery is dropped or waits.
+ */
+final class Mailbox {
+
+    /**
+     * The mailboxes of each receiving object, by recipient name. Objects are compared by identity (not equals),
+     * and are only weakly referenced. All access must be synchronized on this map.
+     */
+    private static final Map<TargetKey, Map<String, Mailbox>> MAILBOXES = new HashMap<TargetKey, Map<String, Mailbox>>();
+
+    /** The keys in {@link #MAILBOXES} whose objects have been garbage collected */
+    private static final ReferenceQueue<Object> COLLECTED = new ReferenceQueue<Object>();
+
+    /** The counts for each recipient, by recipient name */
+    private static final Map<String, Counters> COUNTERS = new ConcurrentHashMap<String, Counters>();
+
+    /** A weak reference to a receiving object, which is equal only to a key for the same object */
+    private static final class TargetKey extends WeakReference<Object> {
+        private final int hashCode;
+
+        TargetKey(final Object target, final ReferenceQueue<Object> queue) {
+            super(target, queue);
+            hashCode = System.identityHashCode(target);
+        }
+
+        @Override public boolean equals(Object o) {
+            if(o==this) {
+                return true;
+            }
+            if(!(o instanceof TargetKey)) {
+                return false;
+            }
+            final Object target = get();
+            return target!=null && target==((TargetKey) o).get();
+        }
+
+        @Override public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    private static final class Counters {
+        final AtomicLong delivered = new AtomicLong();
+        final AtomicLong conflated = new AtomicLong();
+        final AtomicLong dropped = new AtomicLong();
+        final AtomicLong blocked = new AtomicLong();
+        volatile int maxQueued = 0;
+    }
+
+    private final Backpressure.Policy policy;
+    private final int capacity;
+    @Nullable private final Executor executor;
+    private final Counters counters;
+
+    private final ArrayDeque<Runnable> queue = new ArrayDeque<Runnable>();
+
+    /** True while a drain is scheduled or running */
+    private boolean draining = false;
+
+    /** The thread running the drain, if it is running */
+    private Thread drainingThread = null;
+
+    private final Runnable drain = new Runnable() {
+        @Override public void run() {
+            drain();
+        }
+    };
+
+    private Mailbox(final Backpressure.Policy policy, final int capacity,
+                    @Nullable final Executor executor, final Counters counters) {
+        this.policy = policy;
+        this.capacity = policy==Backpressure.Policy.LATEST ? 1 : Math.max(1, capacity);
+        this.executor = executor;
+        this.counters = counters;
+    }
+
+    /**
+     * @param recipient The name of the recipient, including its declaring class.
+     * @param executor The executor that the recipient is called on, or null to call it on the delivering thread.
+     */
+    static Mailbox get(final Object target, final String recipient, final Backpressure.Policy policy,
+                       final int capacity, @Nullable final Executor executor) {
+        synchronized (MAILBOXES) {
+            Reference<?> collected;
+            while((collected = COLLECTED.poll())!=null) {
+                MAILBOXES.remove(collected);
+            }
+
+            final TargetKey key = new TargetKey(target, COLLECTED);
+            Map<String, Mailbox> mailboxes = MAILBOXES.get(key);
+            if(mailboxes==null) {
+                mailboxes = new HashMap<String, Mailbox>();
+                MAILBOXES.put(key, mailboxes);
+            } else {
+                // Not stored, so it doesn't need to be queued when the target is collected
+                key.clear();
+            }
+
+            Mailbox mailbox = mailboxes.get(recipient);
+            if(mailbox==null) {
+                mailbox = new Mailbox(policy, capacity, executor, getCounters(recipient));
+                mailboxes.put(recipient, mailbox);
+            }
+            return mailbox;
+        }
+    }
+
+    private static Counters getCounters(final String recipient) {
+        Counters counters = COUNTERS.get(recipient);
+        if(counters==null) {
+            counters = new Counters();
+            COUNTERS.put(recipient, counters);
+        }
+        return counters;
+    }
+
+    /** @return A snapshot of the counts of each recipient that has been delivered to, by recipient name. */
+    static Map<String, BackpressureStats> getStats() {
+        final Map<String, BackpressureStats> stats = new HashMap<String, BackpressureStats>();
+        for(Map.Entry<String, Counters> entry:COUNTERS.entrySet()) {
+            final Counters counters = entry.getValue();
+            stats.put(entry.getKey(), new BackpressureStats(counters.delivered.get(), counters.conflated.get(),
+                    counters.dropped.get(), counters.blocked.get(), counters.maxQueued));
+        }
+        return stats;
+    }
+
+    void offer(final Runnable delivery) {
+        final boolean schedule;
+        synchronized (this) {
+            if(queue.size() >= capacity) {
+                makeRoom();
+            }
+            queue.add(delivery);
+            if(queue.size() > counters.maxQueued) {
+                counters.maxQueued = queue.size();
+            }
+
+            schedule = !draining;
+            draining = true;
+        }
+
+        if(schedule) {
+            if(executor==null) {
+                drain();
+            } else {
+                executor.execute(drain);
+            }
+        }
+    }
+
+    // Must be called while holding this Mailbox's lock
+    private void makeRoom() {
+        final boolean mayWait = policy==Backpressure.Policy.BLOCK
+                && Looper.myLooper()!=Looper.getMainLooper()
+                && drainingThread!=Thread.currentThread();
+
+        if(!mayWait) {
+            queue.removeFirst();
+            (policy==Backpressure.Policy.LATEST ? counters.conflated : counters.dropped).incrementAndGet();
+            return;
+        }
+
+        counters.blocked.incrementAndGet();
+        boolean interrupted = false;
+        while(queue.size() >= capacity && draining) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if(interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        // Nothing is draining the queue (a delivery failed), so there's nothing to wait for
+        if(queue.size() >= capacity) {
+            queue.removeFirst();
+            counters.dropped.incrementAndGet();
+        }
+    }
+
+    private void drain() {
+        while(true) {
+            final Runnable delivery;
+            synchronized (this) {
+                delivery = queue.poll();
+                if(delivery==null) {
+                    draining = false;
+                    drainingThread = null;
+                    return;
+                }
+                drainingThread = Thread.currentThread();
+                notifyAll();
+            }
+
+            boolean completed = false;
+            try {
+                delivery.run();
+                completed = true;
+            } finally {
+                counters.delivered.incrementAndGet();
+                if(!completed) {
+                    // Let the next delivery start a new drain
+                    synchronized (this) {
+                        draining = false;
+                        drainingThread = null;
+                        notifyAll();
+                    }
+                }
+            }
+        }
+    }
+
+}
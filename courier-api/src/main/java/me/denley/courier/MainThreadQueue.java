@@ -0,0 +1,180 @@
+package me.denley.courier;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.Nullable;
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Delivers to main thread recipients in batches, rather than posting a separate message to the main thread
+ * for each delivery.
+ *
+ * Deliveries are queued until the next frame (using the Choreographer, on API 16 and above), and are then all
+ * made in one pass. If a field is delivered to more than once in the meantime, only the newest value is written.
+ */
+final class MainThreadQueue {
+
+    private static final Object LOCK = new Object();
+
+    private static final Handler HANDLER = new Handler(Looper.getMainLooper());
+
+    private static final Runnable DRAIN = new Runnable() {
+        @Override public void run() {
+            drain();
+        }
+    };
+
+    /** The queued deliveries. Deliveries that have been replaced by a newer value are set to null. */
+    private static ArrayList<Runnable> pending = new ArrayList<Runnable>();
+
+    /** The list of the batch being delivered, which is reused for the next batch once it is cleared */
+    private static ArrayList<Runnable> draining = new ArrayList<Runnable>();
+
+    // The path and queueing time of each queued delivery (and of the batch being delivered), for its metrics
+    private static String[] pendingPaths = new String[16];
+    private static long[] pendingTimes = new long[16];
+    private static String[] drainingPaths = new String[16];
+    private static long[] drainingTimes = new long[16];
+
+    /** The position in the queue of the newest delivery to each field */
+    private static final Map<FieldKey, Integer> PENDING_FIELDS = new HashMap<FieldKey, Integer>();
+
+    private static boolean scheduled = false;
+
+    /** Identifies a field of a target object */
+    private static final class FieldKey {
+        final Object target;
+        final String field;
+
+        FieldKey(final Object target, final String field) {
+            this.target = target;
+            this.field = field;
+        }
+
+        @Override public boolean equals(Object o) {
+            return o instanceof FieldKey && ((FieldKey) o).target == target && ((FieldKey) o).field.equals(field);
+        }
+
+        @Override public int hashCode() {
+            return 31 * System.identityHashCode(target) + field.hashCode();
+        }
+    }
+
+    /**
+     * Queues a delivery to be made on the main thread.
+     *
+     * @param path The path that the delivery was received on, or null if it wasn't received on a particular path.
+     * @param target The target whose field is written by the delivery, or null if it doesn't write a field.
+     * @param field A unique name for the field (including its declaring class). If a delivery to the same field
+     *              of the same target is already queued, it is replaced by this one.
+     */
+    static void post(@Nullable final String path, @Nullable final Object target, @Nullable final String field,
+                     final Runnable delivery) {
+        final long queuedAt = Metrics.start();
+        synchronized (LOCK) {
+            final int index = pending.size();
+            if(target!=null && field!=null) {
+                final Integer previous = PENDING_FIELDS.put(new FieldKey(target, field), index);
+                if(previous!=null) {
+                    pending.set(previous, null);
+                }
+            }
+            pending.add(delivery);
+
+            if(index == pendingTimes.length) {
+                pendingPaths = Arrays.copyOf(pendingPaths, index * 2);
+                pendingTimes = Arrays.copyOf(pendingTimes, index * 2);
+            }
+            pendingPaths[index] = path;
+            pendingTimes[index] = queuedAt;
+
+            if(!scheduled) {
+                scheduled = true;
+                if(Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN || !FrameScheduler.schedule()) {
+                    HANDLER.post(DRAIN);
+                }
+            }
+        }
+    }
+
+    // Called on the main thread
+    private static void drain() {
+        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            FrameScheduler.attach();
+        }
+
+        final ArrayList<Runnable> batch;
+        final String[] paths;
+        final long[] times;
+        synchronized (LOCK) {
+            batch = pending;
+            pending = draining;
+            draining = batch;
+
+            paths = pendingPaths;
+            pendingPaths = drainingPaths;
+            drainingPaths = paths;
+
+            times = pendingTimes;
+            pendingTimes = drainingTimes;
+            drainingTimes = times;
+
+            PENDING_FIELDS.clear();
+            scheduled = false;
+        }
+
+        try {
+            for(int i=0; i<batch.size(); i++) {
+                final Runnable delivery = batch.get(i);
+                if(delivery!=null) {
+                    Metrics.record(paths[i], PathMetrics.Stage.MAIN_THREAD, 0, times[i]);
+                    delivery.run();
+                }
+            }
+        } finally {
+            Arrays.fill(paths, 0, batch.size(), null);
+            batch.clear();
+        }
+    }
+
+    /** Kept in a separate class, so that the Choreographer isn't loaded below API 16 */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static final class FrameScheduler {
+
+        /** The main thread's Choreographer, once it is known (it can only be obtained on the main thread) */
+        private static volatile Choreographer choreographer = null;
+
+        private static final Choreographer.FrameCallback CALLBACK = new Choreographer.FrameCallback() {
+            @Override public void doFrame(long frameTimeNanos) {
+                drain();
+            }
+        };
+
+        static void attach() {
+            if(choreographer==null) {
+                choreographer = Choreographer.getInstance();
+            }
+        }
+
+        /** @return False if the main thread's Choreographer isn't known yet. */
+        static boolean schedule() {
+            final Choreographer main = choreographer;
+            if(main==null) {
+                return false;
+            }
+            main.postFrameCallback(CALLBACK);
+            return true;
+        }
+
+    }
+
+    private MainThreadQueue(){}
+
+}
@@ -0,0 +1,162 @@
+package me.denley.courier;
+
+import android.content.Context;
+
+import com.google.android.gms.common.api.GoogleApiClient;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static me.denley.courier.WearableApis.MESSAGE;
+
+/**
+ * Combines messages sent to the same path and node in quick succession into a single message.
+ *
+ * Batching is enabled for a path using {@link Courier#enableMessageBatching}. Batched messages are
+ * split up again by the generated code on the receiving device (see {@link Packager#unbatch}).
+ */
+final class MessageBatcher {
+
+    private static final Map<String, Policy> POLICIES = new ConcurrentHashMap<String, Policy>();
+
+    private static final Map<String, Batch> BATCHES = new HashMap<String, Batch>();
+
+    private static final class Policy {
+        final long windowMillis;
+        final int maxBatchBytes;
+
+        Policy(long windowMillis, int maxBatchBytes) {
+            this.windowMillis = windowMillis;
+            this.maxBatchBytes = maxBatchBytes;
+        }
+    }
+
+    private static final class Batch {
+        final Context context;
+        final String path;
+        final String nodeId;
+        final List<byte[]> messages = new ArrayList<byte[]>();
+        final List<Receipt> receipts = new ArrayList<Receipt>();
+        int size = 0;
+
+        Batch(Context context, String path, String nodeId) {
+            this.context = context;
+            this.path = path;
+            this.nodeId = nodeId;
+        }
+    }
+
+    static void enable(final String path, final long windowMillis, final int maxBatchBytes) {
+        if(windowMillis <= 0) {
+            throw new IllegalArgumentException("The batching window must be positive");
+        }
+        POLICIES.put(path, new Policy(windowMillis, maxBatchBytes));
+    }
+
+    static void disable(final String path) {
+        POLICIES.remove(path);
+    }
+
+    /**
+     * Adds a message to the batch for the given path and node. The batch is sent when the batching window
+     * for the path has passed since the first message was added, or when the batch reaches its size limit.
+     *
+     * If batching is not enabled for the path, the message is sent immediately.
+     *
+     * The given Receipt does not complete until the batch containing the message has been sent.
+     *
+     * This must be called from a worker thread, on the lane for the given path.
+     */
+    static void add(final Context context, final GoogleApiClient apiClient, final String path,
+                    final String nodeId, final byte[] message, final Receipt receipt) {
+        final Policy policy = POLICIES.get(path);
+        if(policy == null) {
+            receipt.track(WearableApis.MessageApi.sendMessage(apiClient, nodeId, path, message));
+            return;
+        }
+
+        receipt.addPart();
+
+        final String key = nodeId + "\u0000" + path;
+        synchronized (BATCHES) {
+            Batch batch = BATCHES.get(key);
+
+            if(batch != null && batch.size + message.length > policy.maxBatchBytes) {
+                // Adding this message would make the batch too large
+                BATCHES.remove(key);
+                send(batch);
+                batch = null;
+            }
+
+            if(batch == null) {
+                batch = new Batch(context, path, nodeId);
+                BATCHES.put(key, batch);
+                scheduleFlush(key, batch, policy.windowMillis);
+            }
+
+            batch.messages.add(message);
+            batch.receipts.add(receipt);
+            batch.size += message.length;
+
+            if(batch.size >= policy.maxBatchBytes) {
+                BATCHES.remove(key);
+                send(batch);
+            }
+        }
+    }
+
+    private static void scheduleFlush(final String key, final Batch batch, final long delayMillis) {
+        WorkerPool.schedule(batch.path, new Runnable() {
+            @Override public void run() {
+                if(remove(key, batch)) {
+                    send(batch);
+                }
+            }
+        }, delayMillis, new Runnable() {
+            @Override public void run() {
+                // The batch can't be sent, so stop adding to it and fail the messages already in it
+                if(remove(key, batch)) {
+                    for(Receipt receipt:batch.receipts) {
+                        receipt.fail(Receipt.STATUS_REJECTED);
+                    }
+                }
+            }
+        });
+    }
+
+    /** @return False if the batch has already been removed (because it was sent). */
+    private static boolean remove(final String key, final Batch batch) {
+        synchronized (BATCHES) {
+            if(BATCHES.get(key) != batch) {
+                return false;
+            }
+            BATCHES.remove(key);
+            return true;
+        }
+    }
+
+    private static void send(final Batch batch) {
+        final byte[] payload = batch.messages.size()==1 ? batch.messages.get(0) : Packager.batch(batch.messages);
+
+        final Receipt batchReceipt = new Receipt(null);
+        batchReceipt.addCallback(new Receipt.Callback() {
+            @Override public void onComplete(Receipt completed) {
+                for(Receipt receipt:batch.receipts) {
+                    receipt.completePart(completed.getStatus());
+                }
+            }
+        });
+
+        WearableApis.makeWearableApiCall(batch.context, MESSAGE, batch.path, batchReceipt, new WearableApis.WearableApiRunnable() {
+            @Override public void run(GoogleApiClient apiClient) {
+                batchReceipt.track(WearableApis.MessageApi.sendMessage(apiClient, batch.nodeId, batch.path, payload));
+            }
+        });
+    }
+
+    private MessageBatcher(){}
+
+}
@@ -0,0 +1,157 @@
+package me.denley.courier;
+
+import android.support.annotation.Nullable;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records the count, payload size, and latency of each {@link PathMetrics.Stage} of Courier's work, for each path.
+ *
+ * Recording an event doesn't allocate anything (once its path has been seen). Each path's counters are split into
+ * stripes, and each thread adds to the stripe chosen by its id, so that threads recording on the same path
+ * don't all contend for the same counters. The stripes are only added together when a snapshot is taken.
+ */
+final class Metrics {
+
+    /** The key used for work that isn't on a particular path, and for paths beyond {@link #MAX_PATHS} */
+    static final String OTHER_PATH = "(other)";
+
+    /** The maximum number of paths that are recorded separately */
+    private static final int MAX_PATHS = 256;
+
+    /** The number of stripes of each path's counters (a power of two) */
+    private static final int STRIPES = 4;
+
+    /**
+     * The number of latency buckets. Bucket 0 holds latencies below 2^{@link #FIRST_BUCKET_SHIFT} nanoseconds
+     * (about 1 microsecond), and each bucket after that holds latencies up to twice as long as the last. The last bucket
+     * holds everything longer.
+     */
+    static final int BUCKETS = 21;
+    static final int FIRST_BUCKET_SHIFT = 10;
+
+    // The layout of the counters of one stage in one stripe
+    private static final int SLOT_COUNT = 0;
+    private static final int SLOT_BYTES = 1;
+    private static final int SLOT_NANOS = 2;
+    private static final int SLOT_BUCKETS = 3;
+
+    /** The number of counters of each stage in each stripe, rounded up to a multiple of a 64 byte cache line */
+    private static final int STRIDE = (SLOT_BUCKETS + BUCKETS + 7) & ~7;
+
+    private static final int STAGES = PathMetrics.Stage.values().length;
+
+    private static final Map<String, Recorder> RECORDERS = new ConcurrentHashMap<String, Recorder>();
+
+    private static volatile boolean enabled = true;
+
+    /** The counters of one path */
+    private static final class Recorder {
+        final AtomicLongArray counters = new AtomicLongArray(STAGES * STRIPES * STRIDE);
+        final AtomicLongArray maxNanos = new AtomicLongArray(STAGES);
+    }
+
+    static void setEnabled(final boolean enabled) {
+        Metrics.enabled = enabled;
+    }
+
+    static void reset() {
+        RECORDERS.clear();
+    }
+
+    /**
+     * @return The current time in nanoseconds, to be passed to {@link #record} as the start of an event,
+     * or 0 if metrics are disabled.
+     */
+    static long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records an event that started at the given time (from {@link #start}) and has just finished.
+     *
+     * @param path The path of the event, or null if it isn't on a particular path.
+     * @param bytes The size of the event's payload, or 0 if it doesn't have one.
+     */
+    static void record(@Nullable final String path, final PathMetrics.Stage stage, final long bytes, final long startNanos) {
+        if(startNanos==0 || !enabled) {
+            return;
+        }
+        final long nanos = Math.max(0, System.nanoTime() - startNanos);
+
+        final Recorder recorder = getRecorder(path);
+        final int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+        final int base = (stage.ordinal() * STRIPES + stripe) * STRIDE;
+        recorder.counters.incrementAndGet(base + SLOT_COUNT);
+        if(bytes > 0) {
+            recorder.counters.addAndGet(base + SLOT_BYTES, bytes);
+        }
+        recorder.counters.addAndGet(base + SLOT_NANOS, nanos);
+        recorder.counters.incrementAndGet(base + SLOT_BUCKETS + getBucket(nanos));
+
+        long max;
+        while(nanos > (max = recorder.maxNanos.get(stage.ordinal()))) {
+            if(recorder.maxNanos.compareAndSet(stage.ordinal(), max, nanos)) {
+                break;
+            }
+        }
+    }
+
+    private static int getBucket(final long nanos) {
+        final int bucket = 64 - Long.numberOfLeadingZeros(nanos >>> FIRST_BUCKET_SHIFT);
+        return Math.min(bucket, BUCKETS - 1);
+    }
+
+    private static Recorder getRecorder(@Nullable final String path) {
+        final String key = path==null ? OTHER_PATH : path;
+        Recorder recorder = RECORDERS.get(key);
+        if(recorder!=null) {
+            return recorder;
+        }
+
+        synchronized (RECORDERS) {
+            recorder = RECORDERS.get(key);
+            if(recorder==null) {
+                if(RECORDERS.size() >= MAX_PATHS && !key.equals(OTHER_PATH)) {
+                    return getRecorder(OTHER_PATH);
+                }
+                recorder = new Recorder();
+                RECORDERS.put(key, recorder);
+            }
+            return recorder;
+        }
+    }
+
+    /** @return A snapshot of the metrics of each path that has been recorded, by path. */
+    static Map<String, PathMetrics> getSnapshot() {
+        final PathMetrics.Stage[] stages = PathMetrics.Stage.values();
+        final Map<String, PathMetrics> snapshot = new HashMap<String, PathMetrics>();
+        for(Map.Entry<String, Recorder> entry:RECORDERS.entrySet()) {
+            final Recorder recorder = entry.getValue();
+            final StageMetrics[] metrics = new StageMetrics[STAGES];
+            for(PathMetrics.Stage stage:stages) {
+                long count = 0, bytes = 0, nanos = 0;
+                final long[] histogram = new long[BUCKETS];
+                for(int stripe = 0; stripe < STRIPES; stripe++) {
+                    final int base = (stage.ordinal() * STRIPES + stripe) * STRIDE;
+                    count += recorder.counters.get(base + SLOT_COUNT);
+                    bytes += recorder.counters.get(base + SLOT_BYTES);
+                    nanos += recorder.counters.get(base + SLOT_NANOS);
+                    for(int i = 0; i < BUCKETS; i++) {
+                        histogram[i] += recorder.counters.get(base + SLOT_BUCKETS + i);
+                    }
+                }
+                metrics[stage.ordinal()] = new StageMetrics(count, bytes, nanos,
+                        recorder.maxNanos.get(stage.ordinal()), histogram);
+            }
+            snapshot.put(entry.getKey(), new PathMetrics(metrics));
+        }
+        return snapshot;
+    }
+
+    private Metrics(){}
+
+}
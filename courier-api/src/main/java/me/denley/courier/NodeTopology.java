@@ -0,0 +1,158 @@
+package me.denley.courier;
+
+import android.content.Context;
+import android.support.annotation.Nullable;
+
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.wearable.Node;
+import com.google.android.gms.wearable.NodeApi;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static me.denley.courier.WearableApis.NODE;
+
+/**
+ * Keeps a cached list of the connected nodes, so that it doesn't need to be retrieved for every message sent.
+ *
+ * A single NodeListener is registered with the NodeApi to keep the list up to date. Other NodeListeners
+ * (such as those for {@link RemoteNodes} bindings) are registered here instead, and are notified after
+ * the list has been updated.
+ */
+final class NodeTopology {
+
+    private static final Object LOCK = new Object();
+
+    private static final List<NodeApi.NodeListener> LISTENERS = new CopyOnWriteArrayList<NodeApi.NodeListener>();
+
+    /** The connected nodes, or null if they have not been retrieved yet. */
+    private static List<Node> connectedNodes = null;
+
+    /** Incremented on every change to the connected nodes. Used to detect changes during retrieval. */
+    private static int version = 0;
+
+    // The API and client that the topology listener is registered with
+    private static NodeApi registeredApi = null;
+    private static GoogleApiClient registeredClient = null;
+
+    private static final NodeApi.NodeListener TOPOLOGY_LISTENER = new NodeApi.NodeListener() {
+        @Override public void onPeerConnected(Node node) {
+            synchronized (LOCK) {
+                if(connectedNodes!=null) {
+                    final List<Node> nodes = without(connectedNodes, node);
+                    nodes.add(node);
+                    connectedNodes = Collections.unmodifiableList(nodes);
+                }
+                version++;
+            }
+
+            for(NodeApi.NodeListener listener:LISTENERS) {
+                listener.onPeerConnected(node);
+            }
+        }
+
+        @Override public void onPeerDisconnected(Node node) {
+            synchronized (LOCK) {
+                if(connectedNodes!=null) {
+                    connectedNodes = Collections.unmodifiableList(without(connectedNodes, node));
+                }
+                version++;
+            }
+
+            for(NodeApi.NodeListener listener:LISTENERS) {
+                listener.onPeerDisconnected(node);
+            }
+        }
+    };
+
+    /**
+     * Returns the currently connected nodes. This will block the first time that it is called
+     * (and after the GoogleApiClient is reconnected), while the nodes are retrieved.
+     *
+     * This must not be called from the main thread.
+     *
+     * @param apiClient The connected client, or null if using a mock NodeApi.
+     * @return An unmodifiable list of the connected nodes.
+     */
+    static List<Node> getConnectedNodes(@Nullable final GoogleApiClient apiClient) {
+        int fetchVersion;
+        synchronized (LOCK) {
+            ensureRegistered(apiClient);
+            if(connectedNodes!=null) {
+                return connectedNodes;
+            }
+            fetchVersion = version;
+        }
+
+        while(true) {
+            final List<Node> fetched = WearableApis.NodeApi.getConnectedNodes(apiClient).await().getNodes();
+
+            synchronized (LOCK) {
+                if(connectedNodes!=null) {
+                    // Retrieved by another thread in the meantime
+                    return connectedNodes;
+                } else if(fetchVersion == version) {
+                    connectedNodes = Collections.unmodifiableList(new ArrayList<Node>(fetched));
+                    return connectedNodes;
+                }
+
+                // The nodes changed while retrieving them, so the result may be stale
+                fetchVersion = version;
+            }
+        }
+    }
+
+    /**
+     * Registers a listener to be notified when a node connects or disconnects.
+     * The cached list of nodes is updated before the listener is notified.
+     */
+    static void addListener(final Context context, final NodeApi.NodeListener listener) {
+        LISTENERS.add(listener);
+        WearableApis.makeWearableApiCall(context, NODE, new WearableApis.WearableApiRunnable() {
+            @Override public void run(GoogleApiClient apiClient) {
+                synchronized (LOCK) {
+                    ensureRegistered(apiClient);
+                }
+            }
+        });
+    }
+
+    static void removeListener(final NodeApi.NodeListener listener) {
+        LISTENERS.remove(listener);
+    }
+
+    // Must be called while holding LOCK
+    private static void ensureRegistered(@Nullable final GoogleApiClient apiClient) {
+        final NodeApi api = WearableApis.NodeApi;
+        if(api == registeredApi && apiClient == registeredClient) {
+            return;
+        }
+
+        if(registeredApi!=null && (registeredClient==null || registeredClient.isConnected())) {
+            registeredApi.removeListener(registeredClient, TOPOLOGY_LISTENER);
+        }
+
+        // Events may have been missed while not registered, so the cached nodes can't be trusted
+        connectedNodes = null;
+        version++;
+
+        api.addListener(apiClient, TOPOLOGY_LISTENER);
+        registeredApi = api;
+        registeredClient = apiClient;
+    }
+
+    private static List<Node> without(final List<Node> nodes, final Node node) {
+        final List<Node> remaining = new ArrayList<Node>(nodes.size() + 1);
+        for(Node existing:nodes) {
+            if(!existing.getId().equals(node.getId())) {
+                remaining.add(existing);
+            }
+        }
+        return remaining;
+    }
+
+    private NodeTopology(){}
+
+}
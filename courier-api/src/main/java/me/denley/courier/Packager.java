@@ -1,7 +1,10 @@
 package me.denley.courier;
 
 import android.content.Context;
+import android.graphics.Bitmap;
+import android.support.annotation.Nullable;
 
+import com.google.android.gms.wearable.Asset;
 import com.google.android.gms.wearable.DataItem;
 import com.google.android.gms.wearable.DataMap;
 import com.google.android.gms.wearable.DataMapItem;
@@ -10,13 +13,21 @@ import com.google.android.gms.wearable.PutDataRequest;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * This class contains various static methods used to serialize and deserialize objects into
@@ -26,7 +37,60 @@ import java.util.Map;
 @SuppressWarnings("unused")
 public final class Packager {
 
-    private static final Map<Class, DataPackager> PACKAGERS = new LinkedHashMap<Class, DataPackager>();
+    private static final ConcurrentMap<Class, DataPackager> PACKAGERS = new ConcurrentHashMap<Class, DataPackager>();
+
+    /** Stands in for classes that have no packager, so that they are only looked up once */
+    private static final DataPackager NO_PACKAGER = new DataPackager() {
+        @Override public DataMap pack(Object target) { throw new UnsupportedOperationException(); }
+        @Override public void pack(Object target, DataMap map) { throw new UnsupportedOperationException(); }
+        @Override public Object unpack(Context context, DataMap map) { throw new UnsupportedOperationException(); }
+    };
+
+    /**
+     * The first byte of every payload that is wrapped by Courier (rather than being a plain DataMap or
+     * serialized object). This can never be the first byte of a DataMap or serialized object.
+     */
+    private static final byte ENVELOPE_MAGIC = (byte) 0xCB;
+
+    /** Envelope format for a batch of messages */
+    private static final byte FORMAT_BATCH = 0x01;
+
+    /** Envelope format for an object streamed through a channel */
+    private static final byte FORMAT_STREAM = 0x02;
+
+    /** Envelope format for an object converted to a DataMap by its generated packager */
+    private static final byte FORMAT_DATA_MAP = 0x10;
+
+    /** Envelope format for an object written by {@link BinaryCodec} */
+    private static final byte FORMAT_BINARY = 0x11;
+
+    /** Envelope format for an object written using the {@link java.io.Serializable} system */
+    private static final byte FORMAT_SERIALIZABLE = 0x12;
+
+    /** Envelope format for an object written directly by its generated packager, in the {@link Wire} format */
+    private static final byte FORMAT_WIRE = 0x13;
+
+    /**
+     * Envelope format for another payload (including its own envelope), compressed by {@link Compressor}.
+     * The compressed bytes follow the length of the uncompressed payload (4 bytes).
+     */
+    private static final byte FORMAT_DEFLATE = 0x14;
+
+    private static final int DEFLATE_HEADER_SIZE = 2 + 4;
+
+    /** The first two bytes of a serialized object, for payloads sent by older versions without an envelope */
+    private static final byte SERIALIZABLE_MAGIC_0 = (byte) 0xAC;
+    private static final byte SERIALIZABLE_MAGIC_1 = (byte) 0xED;
+
+    // Kinds of objects in a stream
+    private static final byte STREAM_NULL = 0;
+    private static final byte STREAM_SERIALIZABLE = 1;
+    private static final byte STREAM_DATA_MAP = 2;
+    private static final byte STREAM_DATA_MAP_LIST = 3;
+    private static final byte STREAM_BINARY = 4;
+
+    /** Marks the end of a list of DataMaps in a stream */
+    private static final int STREAM_END_OF_LIST = -1;
 
     /** For use by generated code. Don't use this. */
     public interface DataPackager<T> {
@@ -35,6 +99,27 @@ public final class Packager {
         public T unpack(Context context, DataMap map);
     }
 
+    /**
+     * For use by generated code. Don't use this.
+     *
+     * Converts objects directly to and from the {@link Wire} format, without a DataMap.
+     */
+    public interface WirePackager<T> {
+        /** @return The number of bytes that {@link #write} will write, or -1 if the object can't be written in this format. */
+        public int sizeOf(T target);
+        public void write(T target, ByteBuffer buffer);
+        public T read(Context context, ByteBuffer buffer);
+    }
+
+    /** For use by generated code. Don't use this. */
+    public interface PackagerIndex {
+        /** @return A new packager for the given class, or null if this index doesn't have one. */
+        @Nullable public DataPackager getDataPackager(Class targetClass);
+
+        /** @return A new packager for the class with the given binary name, or null if this index doesn't have one. */
+        @Nullable public DataPackager getDataPackager(String className);
+    }
+
     /**
      * In general, this method will only be used by generated code. However, it may be suitable
      * to use this method in some cases (such as in a WearableListenerService).
@@ -44,10 +129,10 @@ public final class Packager {
      * This method will attempt to convert the object to a DataMap using generated code from
      * the {@link Deliverable} annotation.
      *
-     * If that fails (e.g. if the object's class was not annotated with {@link Deliverable}),
-     * then the object will be converted using the {@link java.io.Serializable} system.
+     * If the object's class was not annotated with {@link Deliverable}, then the object will be converted
+     * using the same methods as {@link #packBytes(Object)}.
      *
-     * If both of these methods are not possible, a {@link java.lang.ClassCastException} will be thrown.
+     * If none of these methods are possible, a {@link java.lang.ClassCastException} will be thrown.
      *
      * @param path  The Wearable API path that the data will be sent on.
      * @param data  The object to serialize into bytes.
@@ -55,16 +140,29 @@ public final class Packager {
      */
     @SuppressWarnings("unchecked")
     public static PutDataRequest pack(String path, Object data) {
-        try {
-            final PutDataMapRequest request = PutDataMapRequest.create(path);
-            final DataPackager packager = getDataPackager(data.getClass());
-            packager.pack(data, request.getDataMap());
-            return request.asPutDataRequest();
-        } catch (Exception e) {
-            final PutDataRequest request = PutDataRequest.create(path);
-            request.setData(packSerializable((Serializable)data));
+        final DataPackager packager = data==null ? null : getDataPackager(data.getClass());
+        if(packager != null) {
+            // A DataMap item is sent without an envelope, so that Assets are transferred with it
+            final PutDataMapRequest mapRequest = PutDataMapRequest.create(path);
+            packager.pack(data, mapRequest.getDataMap());
+            final PutDataRequest request = mapRequest.asPutDataRequest();
+
+            // Items without Assets can be compressed, as they don't need to be read as a DataMap
+            final int threshold = Compressor.getThreshold(path, data);
+            final byte[] map = request.getData();
+            if(threshold >= 0 && map.length >= threshold && request.getAssets().isEmpty()) {
+                final byte[] bytes = new byte[2 + map.length];
+                bytes[0] = ENVELOPE_MAGIC;
+                bytes[1] = FORMAT_DATA_MAP;
+                System.arraycopy(map, 0, bytes, 2, map.length);
+                request.setData(compress(bytes));
+            }
             return request;
         }
+
+        final PutDataRequest request = PutDataRequest.create(path);
+        request.setData(packBytes(path, data));
+        return request;
     }
 
     /**
@@ -98,22 +196,93 @@ public final class Packager {
      *
      * Packages the given object into a byte array.
      *
-     * This method will attempt to convert the object to a DataMap using generated code from
-     * the {@link Deliverable} annotation (and then converted to a byte array from the DataMap).
+     * This method will attempt to convert the object to a byte array using generated code from
+     * the {@link Deliverable} annotation. If the class is tagged (see {@link Deliverable#tagged}) and only contains
+     * fields of simple types (not Assets, Bitmaps or DataMaps), they are written directly to the byte array. Otherwise, the object
+     * is converted to a DataMap (and then converted to a byte array from the DataMap).
+     *
+     * If the object's class was not annotated with {@link Deliverable}, then common types (Strings,
+     * boxed primitives, arrays of primitives or Strings, and ArrayLists, HashMaps and LinkedHashMaps of
+     * these types) are written in a compact binary format. Any other object will be converted using the
+     * {@link java.io.Serializable} system.
      *
-     * If that fails (e.g. if the object's class was not annotated with {@link Deliverable}),
-     * then the object will be converted using the {@link java.io.Serializable} system.
+     * The bytes start with a header that identifies which of these methods was used, so that
+     * {@link #unpack(Context, byte[], Class)} doesn't need to try each of them in turn.
      *
-     * If both of these methods are not possible, a {@link java.lang.ClassCastException} will be thrown.
+     * If compression is enabled for the object's class (see {@link Courier#enableCompression(Class, int)}),
+     * the bytes are then compressed if they are larger than the class's threshold.
+     *
+     * If none of these methods are possible, a {@link java.lang.ClassCastException} will be thrown.
      *
      * @param deliverable  The object to serialize into bytes.
      * @return A byte array representing the serialized form of the object.
      */
     public static byte[] packBytes(Object deliverable) {
+        return packBytes(null, deliverable);
+    }
+
+    /**
+     * In general, this method will only be used by generated code. However, it may be suitable
+     * to use this method in some cases (such as in a WearableListenerService).
+     *
+     * Packages the given object into a byte array, in the same way as {@link #packBytes(Object)}. The bytes are
+     * then compressed if compression is enabled for the given path (see {@link Courier#enableCompression(String, int)})
+     * or the object's class, and they are larger than the threshold.
+     *
+     * @param path  The Wearable API path that the bytes will be sent on, or null.
+     * @param deliverable  The object to serialize into bytes.
+     * @return A byte array representing the serialized form of the object.
+     */
+    public static byte[] packBytes(@Nullable String path, Object deliverable) {
+        if(deliverable == null) {
+            return new byte[0];
+        }
+
+        final byte[] bytes = encode(deliverable);
+        final int threshold = Compressor.getThreshold(path, deliverable);
+        return threshold < 0 || bytes.length < threshold ? bytes : compress(bytes);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static byte[] encode(Object deliverable) {
+
+        final DataPackager packager = getDataPackager(deliverable.getClass());
+        final int wireSize = packager instanceof WirePackager ? ((WirePackager) packager).sizeOf(deliverable) : -1;
+        if(wireSize >= 0) {
+            // Written straight into a reused buffer, so the payload array is the only allocation
+            final ByteBuffer buffer = BufferPool.obtainBuffer(2 + wireSize);
+            buffer.put(ENVELOPE_MAGIC).put(FORMAT_WIRE);
+            ((WirePackager) packager).write(deliverable, buffer);
+            return BufferPool.toByteArray(buffer);
+        }
+
+        if(packager != null) {
+            final byte[] map = packager.pack(deliverable).toByteArray();
+            final byte[] bytes = new byte[2 + map.length];
+            bytes[0] = ENVELOPE_MAGIC;
+            bytes[1] = FORMAT_DATA_MAP;
+            System.arraycopy(map, 0, bytes, 2, map.length);
+            return bytes;
+        }
+
+        final BufferPool.PooledStream bytes = BufferPool.obtainStream();
         try {
-            return pack(deliverable).toByteArray();
-        } catch (Exception e) {
-            return packSerializable((Serializable) deliverable);
+            bytes.write(ENVELOPE_MAGIC);
+            if (BinaryCodec.supports(deliverable)) {
+                bytes.write(FORMAT_BINARY);
+                BinaryCodec.write(bytes.data, deliverable);
+            } else {
+                final Serializable serializable = (Serializable) deliverable;
+                bytes.write(FORMAT_SERIALIZABLE);
+                final ObjectOutputStream out = new ObjectOutputStream(bytes);
+                out.writeObject(serializable);
+                out.flush();
+            }
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Unable to serialize object", e);
+        } finally {
+            bytes.release();
         }
     }
 
@@ -243,11 +412,13 @@ public final class Packager {
      *
      * Unpacks the given DataItem into an object of the given class.
      *
-     * This method will attempt to load a DataMap from the DataItem and then use generated code from
-     * the {@link Deliverable} annotation to convert it to an object of the given class.
+     * If the DataItem contains an object written by {@link #pack(String, Object)} without a DataMap, the object
+     * is read using the method identified by its header (see {@link #packBytes(Object)}). Otherwise, this method
+     * will load a DataMap from the DataItem and then use generated code from the {@link Deliverable} annotation
+     * to convert it to an object of the given class.
      *
-     * If this is not possible, this method will then attempt to deserialize the byte array contained
-     * in the DataItem using the {@link java.io.Serializable} system.
+     * The object is completely decoded before this method returns, and doesn't refer to the DataItem, so the
+     * buffer that the DataItem came from can be released as soon as this returns.
      *
      * @param context The Context that may be used to load Assets from the data.
      * @param data  The DataItem to load the object from.
@@ -255,12 +426,13 @@ public final class Packager {
      * @return An object of the given class.
      */
     public static <T> T unpack(Context context, DataItem data, Class<T> targetClass) {
-        try {
-            final DataMapItem dataMapItem = DataMapItem.fromDataItem(data);
-            return unpack(context, dataMapItem.getDataMap(), targetClass);
-        }catch (Exception e) {
-            return unpackSerializable(data.getData());
+        final byte[] bytes = data.getData();
+        if(hasEnvelope(bytes) || getDataPackager(targetClass) == null) {
+            return unpack(context, bytes, targetClass);
         }
+
+        final DataMapItem dataMapItem = DataMapItem.fromDataItem(data);
+        return unpack(context, dataMapItem.getDataMap(), targetClass);
     }
 
     /**
@@ -269,24 +441,79 @@ public final class Packager {
      *
      * Unpacks the given byte array into an object of the given class.
      *
-     * This method will attempt to convert the byte array into a DataMap and then use generated code from
-     * the {@link Deliverable} annotation to convert it to an object of the given class.
+     * The object is read using the method identified by the header written by {@link #packBytes(Object)}.
      *
-     * If this is not possible, this method will then attempt to deserialize the byte array
-     * using the {@link java.io.Serializable} system.
+     * Byte arrays without a header (sent by older versions of Courier) are deserialized using the
+     * {@link java.io.Serializable} system if they start with its header. Otherwise, this method will convert
+     * the byte array into a DataMap and then use generated code from the {@link Deliverable} annotation to
+     * convert it to an object of the given class.
      *
      * @param context The Context that may be used to load Assets from the data.
      * @param data  The byte array to load the object from.
      * @param targetClass The class of object to unpack.
      * @return An object of the given class.
      */
+    @SuppressWarnings("unchecked")
     public static <T> T unpack(Context context, byte[] data, Class<T> targetClass) {
-        try {
-            final DataMap dataMap = DataMap.fromByteArray(data);
-            return unpack(context, dataMap, targetClass);
-        }catch (Exception e) {
-            return unpackSerializable(data);
+        if(data==null || data.length==0) {
+            return null;
+        }
+
+        if(!hasEnvelope(data)) {
+            if(data.length >= 2 && data[0]==SERIALIZABLE_MAGIC_0 && data[1]==SERIALIZABLE_MAGIC_1) {
+                return unpackSerializable(data);
+            }
+            return unpack(context, DataMap.fromByteArray(data), targetClass);
+        }
+
+        final byte format = data[1];
+        switch (format) {
+            case FORMAT_WIRE:
+                final WirePackager<T> packager = getWirePackager(targetClass);
+                if(packager == null) {
+                    throw new IllegalArgumentException("Unable to find packager for " + targetClass.getName());
+                }
+                return packager.read(context, ByteBuffer.wrap(data, 2, data.length - 2).slice());
+            case FORMAT_DATA_MAP:
+                return unpack(context, DataMap.fromByteArray(Arrays.copyOfRange(data, 2, data.length)), targetClass);
+            case FORMAT_BINARY:
+                try {
+                    return (T) BinaryCodec.read(new DataInputStream(new ByteArrayInputStream(data, 2, data.length - 2)));
+                } catch (IOException e) {
+                    throw new IllegalArgumentException("Unable to read object", e);
+                }
+            case FORMAT_SERIALIZABLE:
+                return unpackSerializable(Arrays.copyOfRange(data, 2, data.length));
+            case FORMAT_DEFLATE:
+                if(data.length < DEFLATE_HEADER_SIZE) {
+                    throw new IllegalArgumentException("Compressed data is truncated or corrupt");
+                }
+                // The length is checked by the Compressor before anything is allocated for it
+                final int length = ByteBuffer.wrap(data, 2, 4).getInt();
+                return unpack(context, Compressor.inflate(data, DEFLATE_HEADER_SIZE, length), targetClass);
+            default:
+                throw new IllegalArgumentException("Unable to unpack data with format " + format
+                        + ". Batches must be split with Packager.unbatch, and streams read with Packager.unpack(Context, InputStream)");
+        }
+    }
+
+    /**
+     * @return The given payload, compressed with its length in a {@link #FORMAT_DEFLATE} envelope,
+     * or the payload itself if compressing it doesn't make it smaller.
+     */
+    private static byte[] compress(byte[] payload) {
+        final byte[] compressed = Compressor.deflate(payload, DEFLATE_HEADER_SIZE);
+        if(compressed == null) {
+            return payload;
         }
+
+        final ByteBuffer header = ByteBuffer.wrap(compressed);
+        header.put(ENVELOPE_MAGIC).put(FORMAT_DEFLATE).putInt(payload.length);
+        return compressed;
+    }
+
+    private static boolean hasEnvelope(byte[] data) {
+        return data!=null && data.length >= 2 && data[0]==ENVELOPE_MAGIC;
     }
 
     /**
@@ -381,22 +608,308 @@ public final class Packager {
         return unpack(null, map, targetClass);
     }
 
+    /**
+     * In general, this method will only be used by generated code. However, it may be suitable
+     * to use this method in some cases (such as to send an object through your own Channel).
+     *
+     * Writes the given object to a stream. The object can be read from the stream using
+     * {@link #unpack(Context, InputStream)}.
+     *
+     * Objects of classes annotated with {@link Deliverable} are written as a DataMap, which is packed
+     * in memory first. ArrayLists of such objects are written one element at a time, so only one
+     * element's packed bytes are held in memory at once. Other objects are written using the
+     * {@link java.io.Serializable} system.
+     *
+     * @param deliverable  The object to write.
+     * @param out The stream to write the object to. This is not closed.
+     * @throws IOException If the stream could not be written to.
+     */
     @SuppressWarnings("unchecked")
-    private static <T> DataPackager<T> getDataPackager(Class<T> targetClass) {
-        DataPackager<T> packager = PACKAGERS.get(targetClass);
-        if(packager!=null) {
-            return packager;
+    public static void pack(Object deliverable, OutputStream out) throws IOException {
+        final DataOutputStream data = new DataOutputStream(out);
+        data.writeByte(ENVELOPE_MAGIC);
+        data.writeByte(FORMAT_STREAM);
+
+        if(deliverable == null) {
+            data.writeByte(STREAM_NULL);
+        } else if (getDataPackager(deliverable.getClass()) != null) {
+            data.writeByte(STREAM_DATA_MAP);
+            data.writeUTF(deliverable.getClass().getName());
+            writeDataMap(data, pack(deliverable));
+        } else if (BinaryCodec.supports(deliverable)) {
+            data.writeByte(STREAM_BINARY);
+            BinaryCodec.write(data, deliverable);
+        } else if (isDeliverableList(deliverable)) {
+            final ArrayList<?> list = (ArrayList<?>) deliverable;
+            data.writeByte(STREAM_DATA_MAP_LIST);
+            data.writeUTF(list.get(0).getClass().getName());
+            for(Object item:list) {
+                writeDataMap(data, pack(item));
+            }
+            data.writeInt(STREAM_END_OF_LIST);
+        } else {
+            data.writeByte(STREAM_SERIALIZABLE);
+            final ObjectOutputStream objects = new ObjectOutputStream(data);
+            objects.writeObject(deliverable);
+            objects.flush();
         }
+        data.flush();
+    }
 
-        try {
-            final String packagerClassName = targetClass.getName() + "$$DataMapPackager";
-            final Class packagerClass = Class.forName(packagerClassName);
-            packager = (DataPackager<T>)packagerClass.newInstance();
-            PACKAGERS.put(targetClass, packager);
-            return packager;
-        }catch (Exception e) {
-            return null;
+    private static boolean isDeliverableList(Object object) {
+        if(!(object instanceof ArrayList) || ((ArrayList<?>) object).isEmpty()) {
+            return false;
+        }
+
+        final ArrayList<?> list = (ArrayList<?>) object;
+        final Class<?> itemClass = list.get(0)==null ? null : list.get(0).getClass();
+        if(itemClass == null || getDataPackager(itemClass) == null) {
+            return false;
+        }
+        for(Object item:list) {
+            if(item == null || item.getClass() != itemClass) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void writeDataMap(DataOutputStream out, DataMap map) throws IOException {
+        final byte[] bytes = map.toByteArray();
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * In general, this method will only be used by generated code. However, it may be suitable
+     * to use this method in some cases (such as in a WearableListenerService).
+     *
+     * Reads an object that was written to a stream using {@link #pack(Object, OutputStream)}
+     * (for example, an object sent using {@link Courier#deliverStream}).
+     *
+     * The object's class is read from the stream, so it is not required here.
+     *
+     * @param context The Context that may be used to load Assets from the data.
+     * @param in The stream to read the object from. This is not closed.
+     * @return The object read from the stream.
+     * @throws IOException If the stream could not be read, or did not contain an object written by Courier.
+     */
+    @SuppressWarnings("unchecked")
+    public static Object unpack(Context context, InputStream in) throws IOException {
+        final DataInputStream data = new DataInputStream(in);
+        if(data.readByte()!=ENVELOPE_MAGIC || data.readByte()!=FORMAT_STREAM) {
+            throw new IOException("The stream does not contain an object written by Courier");
+        }
+
+        final byte kind = data.readByte();
+        switch (kind) {
+            case STREAM_NULL:
+                return null;
+            case STREAM_SERIALIZABLE:
+                try {
+                    return new ObjectInputStream(data).readObject();
+                } catch (ClassNotFoundException e) {
+                    throw new IOException("Unable to deserialize object: " + e.getMessage());
+                }
+            case STREAM_BINARY:
+                return BinaryCodec.read(data);
+            case STREAM_DATA_MAP:
+                return getStreamedPackager(data.readUTF()).unpack(context, readDataMap(data, data.readInt()));
+            case STREAM_DATA_MAP_LIST:
+                final DataPackager packager = getStreamedPackager(data.readUTF());
+                final ArrayList<Object> list = new ArrayList<Object>();
+                int length;
+                while((length = data.readInt()) != STREAM_END_OF_LIST) {
+                    list.add(packager.unpack(context, readDataMap(data, length)));
+                }
+                return list;
+            default:
+                throw new IOException("Unknown stream content type: " + kind);
+        }
+    }
+
+    /**
+     * Finds the packager for a class name read from a stream. The name was sent by another device, so it is only
+     * looked up among the generated packagers, and the named class itself is never loaded by name.
+     */
+    private static DataPackager getStreamedPackager(String className) throws IOException {
+        final ClassLoader loader = Packager.class.getClassLoader();
+        final Object index = GeneratedIndex.getIndex(className, loader, GeneratedIndex.PACKAGER_INDEX);
+        DataPackager packager = index instanceof PackagerIndex ? ((PackagerIndex) index).getDataPackager(className) : null;
+        if(packager == null) {
+            final Object generated = GeneratedIndex.getGeneratedInstance(className, loader, "$$DataMapPackager");
+            packager = generated instanceof DataPackager ? (DataPackager) generated : null;
+        }
+
+        if(packager == null) {
+            throw new IOException("Unable to find packager for " + className +
+                    ". Please ensure that it is annotated with @Deliverable, " +
+                    "and that the annotation processor has run correctly");
+        }
+        return packager;
+    }
+
+    private static DataMap readDataMap(DataInputStream in, int length) throws IOException {
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return DataMap.fromByteArray(bytes);
+    }
+
+    /**
+     * For use by generated code. Don't use this.
+     *
+     * @return The given object, if it is an instance of the given class, otherwise null.
+     */
+    public static <T> T cast(Object object, Class<T> targetClass) {
+        return targetClass.isInstance(object) ? targetClass.cast(object) : null;
+    }
+
+    /**
+     * For use by generated code. Don't use this.
+     *
+     * Copies an object by packing it, then unpacking the bytes.
+     *
+     * @return A copy of the given object, if it is an instance of the given class, otherwise null.
+     */
+    public static <T> T copy(Context context, Object object, Class<T> targetClass) {
+        final T original = cast(object, targetClass);
+        return original == null ? null : unpack(context, packBytes(original), targetClass);
+    }
+
+    /**
+     * In general, this method will only be used by generated code. However, it may be suitable
+     * to use this method in some cases (such as to add a Bitmap to your own DataMap).
+     *
+     * Encodes the given Bitmap as an Asset.
+     *
+     * @param bitmap The Bitmap to encode.
+     * @param format The image format to encode the Bitmap as.
+     * @param quality The encoding quality, from 0 to 100. This is ignored by lossless formats.
+     * @param maxDimension The maximum width and height of the encoded image, or 0 to never scale the Bitmap.
+     *                     Larger Bitmaps are scaled down (keeping their aspect ratio) before they are encoded.
+     * @return An Asset containing the encoded image.
+     */
+    public static Asset packBitmap(Bitmap bitmap, Bitmap.CompressFormat format, int quality, int maxDimension) {
+        Bitmap scaled = bitmap;
+        final int largest = Math.max(bitmap.getWidth(), bitmap.getHeight());
+        if(maxDimension > 0 && largest > maxDimension) {
+            final float scale = maxDimension / (float) largest;
+            scaled = Bitmap.createScaledBitmap(bitmap,
+                    Math.max(1, Math.round(bitmap.getWidth() * scale)),
+                    Math.max(1, Math.round(bitmap.getHeight() * scale)),
+                    true);
+        }
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        scaled.compress(format, quality, out);
+        if(scaled != bitmap) {
+            scaled.recycle();
+        }
+        return Asset.createFromBytes(out.toByteArray());
+    }
+
+    /**
+     * In general, this method will only be used by generated code. However, it may be suitable
+     * to use this method in some cases (such as in a WearableListenerService).
+     *
+     * Loads and decodes a Bitmap from the given Asset. Decoded Bitmaps are cached (see {@link Courier#setAssetCacheSize}),
+     * so the same instance may be returned to multiple callers. It must not be recycled or modified.
+     *
+     * This must not be called from the main thread.
+     *
+     * @param context The Context used to connect to the wearable API.
+     * @param asset The Asset to decode.
+     * @return The decoded Bitmap, or null if the Asset could not be loaded or decoded.
+     */
+    @Nullable public static Bitmap unpackBitmap(Context context, Asset asset) {
+        return AssetCache.getBitmap(context, asset);
+    }
+
+    /**
+     * Combines the given messages into a single byte array, which can be split up again using {@link #unbatch}.
+     *
+     * @param messages The messages to combine.
+     * @return A byte array containing all of the messages.
+     */
+    static byte[] batch(List<byte[]> messages) {
+        int size = 2 + 4;
+        for(byte[] message:messages) {
+            size += 4 + message.length;
+        }
+
+        final ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.put(ENVELOPE_MAGIC).put(FORMAT_BATCH);
+        buffer.putInt(messages.size());
+        for(byte[] message:messages) {
+            buffer.putInt(message.length);
+            buffer.put(message);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * In general, this method will only be used by generated code. However, it may be suitable
+     * to use this method in some cases (such as in a WearableListenerService).
+     *
+     * Splits up a message that was sent on a path with batching enabled (see {@link Courier#enableMessageBatching}).
+     *
+     * If the message is not a batch, then the returned List will contain only the given message.
+     *
+     * @param data The received message data.
+     * @return A List of the messages contained in the given data.
+     * @throws IllegalArgumentException If the data is a batch, but is truncated or corrupt.
+     */
+    public static List<byte[]> unbatch(byte[] data) {
+        if(data==null || data.length < 2 || data[0]!=ENVELOPE_MAGIC || data[1]!=FORMAT_BATCH) {
+            return Collections.singletonList(data);
+        }
+
+        // The counts and lengths are checked before anything is allocated, so a corrupt batch can't exhaust memory
+        final ByteBuffer buffer = ByteBuffer.wrap(data, 2, data.length - 2);
+        final int count = buffer.remaining() < 4 ? -1 : buffer.getInt();
+        if(count < 0 || count > buffer.remaining() / 4) {
+            throw new IllegalArgumentException("Batched message data is truncated or corrupt");
+        }
+
+        final List<byte[]> messages = new ArrayList<byte[]>(count);
+        for(int i=0; i<count; i++) {
+            final int length = buffer.remaining() < 4 ? -1 : buffer.getInt();
+            if(length < 0 || length > buffer.remaining()) {
+                throw new IllegalArgumentException("Batched message data is truncated or corrupt");
+            }
+            final byte[] message = new byte[length];
+            buffer.get(message);
+            messages.add(message);
+        }
+        return messages;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Nullable private static <T> DataPackager<T> getDataPackager(Class<T> targetClass) {
+        DataPackager packager = PACKAGERS.get(targetClass);
+        if(packager == null) {
+            packager = findDataPackager(targetClass);
+            final DataPackager existing = PACKAGERS.putIfAbsent(targetClass, packager);
+            if(existing != null) {
+                packager = existing;
+            }
+        }
+        return packager == NO_PACKAGER ? null : (DataPackager<T>) packager;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Nullable static <T> WirePackager<T> getWirePackager(Class<T> targetClass) {
+        final DataPackager<T> packager = getDataPackager(targetClass);
+        return packager instanceof WirePackager ? (WirePackager<T>) packager : null;
+    }
+
+    private static DataPackager findDataPackager(Class targetClass) {
+        final PackagerIndex index = (PackagerIndex) GeneratedIndex.getIndex(targetClass, GeneratedIndex.PACKAGER_INDEX);
+        DataPackager packager = index == null ? null : index.getDataPackager(targetClass);
+        if(packager == null) {
+            packager = (DataPackager) GeneratedIndex.getGeneratedInstance(targetClass, "$$DataMapPackager");
         }
+        return packager == null ? NO_PACKAGER : packager;
     }
 
 
@@ -0,0 +1,45 @@
+package me.denley.courier;
+
+/**
+ * A snapshot of the metrics of one path (see {@link Courier#getMetrics}), with the count, payload size,
+ * and latency of each stage of the work done for the path.
+ */
+public final class PathMetrics {
+
+    /** A stage of the work done to send or receive a message or data item. */
+    public enum Stage {
+        /** Packing an object into a message or data item, with the size of the packed payload. */
+        PACK,
+        /** Unpacking a received message or data item (once for each class of recipient), with the size of its payload. */
+        UNPACK,
+        /** The time that a Wearable API call waits before it runs, including the time to connect to the API. */
+        QUEUE,
+        /** Running a Wearable API call, including packing its payload. Calls that don't block don't include the time to complete the call. */
+        API_CALL,
+        /** The time that a delivery waits for the main thread, from being received until its recipient is called. */
+        MAIN_THREAD
+    }
+
+    private final StageMetrics[] stages;
+
+    PathMetrics(StageMetrics[] stages) {
+        this.stages = stages;
+    }
+
+    /** @return The metrics of the given stage. */
+    public StageMetrics get(Stage stage) {
+        return stages[stage.ordinal()];
+    }
+
+    @Override public String toString() {
+        final StringBuilder builder = new StringBuilder("PathMetrics{");
+        for(Stage stage:Stage.values()) {
+            if(stage.ordinal() > 0) {
+                builder.append(", ");
+            }
+            builder.append(stage).append('=').append(get(stage));
+        }
+        return builder.append('}').toString();
+    }
+
+}
@@ -0,0 +1,96 @@
+package me.denley.courier;
+
+import android.support.annotation.Nullable;
+
+/**
+ * For use by generated code. Don't use this.
+ *
+ * A path given to {@link ReceiveData} or {@link ReceiveMessages} that matches more than one path. Each segment of
+ * the pattern written as {@code {name}} matches any single (non-empty) segment of a path, and a final segment written
+ * as {@code *} matches the whole (non-empty) remainder of a path. For example, "/songs/{id}" matches "/songs/42", and
+ * "/songs/*" matches both "/songs/42" and "/songs/42/lyrics".
+ */
+public final class PathPattern {
+
+    private static final String[] NO_CAPTURES = new String[0];
+
+    /** The segments of the pattern (not including a wildcard), with null for each captured segment */
+    private final String[] segments;
+
+    private final boolean wildcard;
+
+    private final int captureCount;
+
+    /** @return True if the given path contains a captured segment or a wildcard. */
+    static boolean isPattern(final String path) {
+        return path.indexOf('{') != -1 || path.equals("*") || path.endsWith("/*");
+    }
+
+    public PathPattern(final String pattern) {
+        final String[] parts = pattern.split("/", -1);
+        wildcard = parts[parts.length - 1].equals("*");
+
+        int captures = wildcard ? 1 : 0;
+        segments = new String[wildcard ? parts.length - 1 : parts.length];
+        for(int i=0; i<segments.length; i++) {
+            final String part = parts[i];
+            if(part.length() > 2 && part.charAt(0) == '{' && part.charAt(part.length() - 1) == '}') {
+                captures++;
+            } else if(part.indexOf('{') != -1 || part.indexOf('}') != -1 || part.indexOf('*') != -1) {
+                throw new IllegalArgumentException("Invalid path pattern: " + pattern);
+            } else {
+                segments[i] = part;
+            }
+        }
+        captureCount = captures;
+    }
+
+    /**
+     * @return The captured segments of the path (in order, followed by the remainder matched by a wildcard),
+     * or null if the path doesn't match this pattern.
+     */
+    @Nullable public String[] match(final String path) {
+        String[] captures = captureCount == 0 ? NO_CAPTURES : null;
+        int captured = 0;
+
+        int start = 0;
+        for(int i=0; i<segments.length; i++) {
+            final boolean last = i == segments.length - 1;
+            int end = path.indexOf('/', start);
+            if(end == -1) {
+                if(!last || wildcard) {
+                    return null;
+                }
+                end = path.length();
+            } else if (last && !wildcard) {
+                return null;
+            }
+
+            final String segment = segments[i];
+            if(segment == null) {
+                if(end == start) {
+                    return null;
+                }
+                if(captures == null) {
+                    captures = new String[captureCount];
+                }
+                captures[captured++] = path.substring(start, end);
+            } else if (end - start != segment.length() || !path.regionMatches(start, segment, 0, segment.length())) {
+                return null;
+            }
+            start = end + 1;
+        }
+
+        if(wildcard) {
+            if(start >= path.length()) {
+                return null;
+            }
+            if(captures == null) {
+                captures = new String[captureCount];
+            }
+            captures[captured] = path.substring(start);
+        }
+        return captures;
+    }
+
+}
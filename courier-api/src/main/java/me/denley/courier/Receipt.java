@@ -0,0 +1,213 @@
+package me.denley.courier;
+
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.annotation.Nullable;
+
+import com.google.android.gms.common.api.CommonStatusCodes;
+import com.google.android.gms.common.api.PendingResult;
+import com.google.android.gms.common.api.Result;
+import com.google.android.gms.common.api.ResultCallback;
+import com.google.android.gms.common.api.Status;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A handle to an asynchronous send or delete operation, such as {@link Courier#deliverData}.
+ *
+ * A Receipt completes once all of the Wearable API calls for the operation have completed. If any of
+ * them fail, the Receipt's status is that of the first failure. Otherwise, its status is a success.
+ */
+public final class Receipt {
+
+    /** Status code for an operation that was replaced by a newer one (see {@link Courier#enableDataCoalescing}). */
+    public static final int STATUS_SUPERSEDED = 10001;
+
+    /** Status code for an operation that was rejected because too many operations were already waiting. */
+    public static final int STATUS_REJECTED = 10002;
+
+    /** Status code for an operation that could not be made because the Wearable API is unavailable. */
+    public static final int STATUS_UNAVAILABLE = 10003;
+
+    /** A callback to be notified when a Receipt completes. */
+    public interface Callback {
+        void onComplete(Receipt receipt);
+    }
+
+    private static final Status SUCCESS = new Status(CommonStatusCodes.SUCCESS);
+
+    private final long startTime = SystemClock.elapsedRealtime();
+    private final CountDownLatch latch = new CountDownLatch(1);
+
+    /** A permit to release when this completes, or null */
+    @Nullable private final Semaphore permits;
+
+    // Guarded by this
+    private int remainingParts = 1;
+    private Status status = null;
+    private Status firstFailure = null;
+    private long endTime;
+    private final List<Callback> callbacks = new ArrayList<Callback>(1);
+
+    Receipt(@Nullable Semaphore permits) {
+        this.permits = permits;
+    }
+
+    /** Creates a Receipt that has already failed with the given status code. */
+    static Receipt failed(int statusCode) {
+        final Receipt receipt = new Receipt(null);
+        receipt.completePart(new Status(statusCode));
+        return receipt;
+    }
+
+    /**
+     * @return True if the operation has completed (successfully or not).
+     */
+    public synchronized boolean isDone() {
+        return status != null;
+    }
+
+    /**
+     * @return True if the operation has completed successfully.
+     */
+    public synchronized boolean isSuccess() {
+        return status != null && status.isSuccess();
+    }
+
+    /**
+     * @return The status of the completed operation, or null if it has not completed yet.
+     */
+    @Nullable public synchronized Status getStatus() {
+        return status;
+    }
+
+    /**
+     * @return The time taken for the operation to complete, in milliseconds. If it has not completed
+     * yet, this is the time since it was started.
+     */
+    public synchronized long getElapsedMillis() {
+        return (status == null ? SystemClock.elapsedRealtime() : endTime) - startTime;
+    }
+
+    /**
+     * Blocks until the operation has completed. This must not be called from the main thread.
+     *
+     * @return The status of the completed operation.
+     */
+    public Status await() {
+        checkNotMainThread();
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return getStatus();
+    }
+
+    /**
+     * Blocks until the operation has completed, or the timeout has passed. This must not be called from the main thread.
+     *
+     * @param timeout   The maximum time to wait.
+     * @param unit      The unit of the timeout.
+     * @return The status of the completed operation, or null if it did not complete in time.
+     */
+    @Nullable public Status await(final long timeout, final TimeUnit unit) {
+        checkNotMainThread();
+        try {
+            latch.await(timeout, unit);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return getStatus();
+    }
+
+    /**
+     * Adds a callback to be notified when the operation completes. If it has already completed, the callback
+     * is notified immediately. Otherwise, it is notified on the thread that completes the operation
+     * (which may be the main thread).
+     *
+     * @param callback The callback to notify.
+     */
+    public void addCallback(final Callback callback) {
+        synchronized (this) {
+            if(status == null) {
+                callbacks.add(callback);
+                return;
+            }
+        }
+        callback.onComplete(this);
+    }
+
+    /** Adds an API call that must complete before this Receipt completes. */
+    synchronized void addPart() {
+        remainingParts++;
+    }
+
+    /** Adds the given API call as a part that must complete before this Receipt completes. */
+    <R extends Result> void track(@Nullable final PendingResult<R> result) {
+        if(result == null) {
+            // Mock APIs might not return a result
+            return;
+        }
+
+        addPart();
+        result.setResultCallback(new ResultCallback<R>() {
+            @Override public void onResult(R r) {
+                completePart(r.getStatus());
+            }
+        });
+    }
+
+    /** Completes one part of this operation, with the given result. */
+    void completePart(@Nullable final Status partStatus) {
+        final List<Callback> toNotify;
+        synchronized (this) {
+            if(status != null) {
+                return;
+            }
+
+            if(partStatus != null && !partStatus.isSuccess() && firstFailure == null) {
+                firstFailure = partStatus;
+            }
+            if(--remainingParts > 0) {
+                return;
+            }
+
+            status = firstFailure == null ? SUCCESS : firstFailure;
+            endTime = SystemClock.elapsedRealtime();
+            toNotify = new ArrayList<Callback>(callbacks);
+            callbacks.clear();
+        }
+
+        if(permits != null) {
+            permits.release();
+        }
+        latch.countDown();
+        for(Callback callback:toNotify) {
+            callback.onComplete(this);
+        }
+    }
+
+    /** Completes this entire operation with the given (failed) status code, regardless of any remaining parts. */
+    void fail(final int statusCode) {
+        synchronized (this) {
+            if(status != null) {
+                return;
+            }
+            firstFailure = new Status(statusCode);
+            remainingParts = 1;
+        }
+        completePart(null);
+    }
+
+    private static void checkNotMainThread() {
+        if(Looper.myLooper()==Looper.getMainLooper()) {
+            throw new IllegalStateException("Receipt.await can not be called from the UI thread");
+        }
+    }
+
+}
@@ -0,0 +1,95 @@
+package me.denley.courier;
+
+import java.util.Arrays;
+
+/**
+ * A snapshot of the count, payload size, and latency of one {@link PathMetrics.Stage} of a path's work
+ * (see {@link Courier#getMetrics}).
+ *
+ * Latencies are counted in a histogram of buckets that double in size, from about 1 microsecond up to about half a second.
+ */
+public final class StageMetrics {
+
+    private final long count;
+    private final long bytes;
+    private final long totalNanos;
+    private final long maxNanos;
+    private final long[] histogram;
+
+    StageMetrics(long count, long bytes, long totalNanos, long maxNanos, long[] histogram) {
+        this.count = count;
+        this.bytes = bytes;
+        this.totalNanos = totalNanos;
+        this.maxNanos = maxNanos;
+        this.histogram = histogram;
+    }
+
+    /** @return The number of times the stage has run. */
+    public long getCount() {
+        return count;
+    }
+
+    /** @return The total size of the payloads handled by the stage, in bytes (0 for stages without a payload). */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /** @return The total time taken by the stage, in nanoseconds. */
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    /** @return The average time taken by the stage, in nanoseconds. */
+    public long getMeanNanos() {
+        return count==0 ? 0 : totalNanos / count;
+    }
+
+    /** @return The longest time taken by the stage, in nanoseconds. */
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    /**
+     * @return The number of times the stage took each range of time. The count at index i is for times below
+     * {@link #getBucketUpperBoundNanos getBucketUpperBoundNanos(i)}, and at or above the bound of the bucket before it.
+     */
+    public long[] getHistogram() {
+        return histogram.clone();
+    }
+
+    /**
+     * @return The (exclusive) upper bound of the times counted in the given bucket of the histogram, in nanoseconds.
+     * The last bucket has no upper bound, and returns {@link Long#MAX_VALUE}.
+     */
+    public static long getBucketUpperBoundNanos(int bucket) {
+        return bucket >= Metrics.BUCKETS - 1 ? Long.MAX_VALUE : 1L << (Metrics.FIRST_BUCKET_SHIFT + bucket);
+    }
+
+    /**
+     * @param percentile The percentile, from 0 to 100.
+     * @return An estimate of the given percentile of the times taken by the stage, in nanoseconds. This is the
+     * upper bound of the histogram bucket that the percentile falls in (or the maximum time, if it is lower).
+     */
+    public long getPercentileNanos(double percentile) {
+        if(count==0) {
+            return 0;
+        }
+
+        final long rank = (long) Math.ceil(Math.max(0, Math.min(100, percentile)) / 100 * count);
+        long seen = 0;
+        for(int i = 0; i < histogram.length; i++) {
+            seen += histogram[i];
+            if(seen >= rank && seen > 0) {
+                return Math.min(getBucketUpperBoundNanos(i), maxNanos);
+            }
+        }
+        return maxNanos;
+    }
+
+    @Override public String toString() {
+        return "StageMetrics{count=" + count + ", bytes=" + bytes + ", meanNanos=" + getMeanNanos()
+                + ", p50Nanos=" + getPercentileNanos(50) + ", p99Nanos=" + getPercentileNanos(99)
+                + ", maxNanos=" + maxNanos + ", histogram=" + Arrays.toString(histogram) + "}";
+    }
+
+}
@@ -0,0 +1,132 @@
+package me.denley.courier;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.wearable.Channel;
+import com.google.android.gms.wearable.ChannelApi;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static me.denley.courier.WearableApis.CHANNEL;
+
+/**
+ * Receives objects sent using {@link Courier#deliverStream}.
+ *
+ * A channel's stream can only be read once, so a single ChannelListener is registered with the ChannelApi.
+ * Only channels on paths that have a registered message listener are read (streams are received by the same
+ * recipients as messages). Each object is read from its stream once, and is then passed to every registered
+ * {@link WearableApis.StreamListener}.
+ */
+final class StreamReceiver {
+
+    private static final String TAG = "Courier";
+
+    /** The size of the buffer used to read from a channel */
+    static final int BUFFER_SIZE = 8 * 1024;
+
+    private static final Object LOCK = new Object();
+
+    private static final List<WearableApis.StreamListener> LISTENERS =
+            new CopyOnWriteArrayList<WearableApis.StreamListener>();
+
+    // Guarded by LOCK
+    private static Context appContext = null;
+    private static GoogleApiClient registeredClient = null;
+
+    private static final ChannelApi.ChannelListener CHANNEL_LISTENER = new ChannelApi.ChannelListener() {
+        @Override public void onChannelOpened(final Channel channel) {
+            // Channels on other paths may have been opened for the app's own use, so they are left alone
+            if(LISTENERS.isEmpty() || !SubscriptionHub.hasMessageListener(channel.getPath())) {
+                return;
+            }
+
+            final Context context;
+            synchronized (LOCK) {
+                context = appContext;
+            }
+            WearableApis.makeWearableApiCall(context, CHANNEL, channel.getPath(), new WearableApis.WearableApiRunnable() {
+                @Override public void run(final GoogleApiClient apiClient) {
+                    final boolean accepted = WorkerPool.executeTransfer(channel.getPath(), new Runnable() {
+                        @Override public void run() {
+                            receive(context, apiClient, channel);
+                        }
+                    });
+                    if(!accepted) {
+                        channel.close(apiClient);
+                    }
+                }
+            });
+        }
+
+        @Override public void onChannelClosed(Channel channel, int closeReason, int appSpecificErrorCode) {}
+        @Override public void onInputClosed(Channel channel, int closeReason, int appSpecificErrorCode) {}
+        @Override public void onOutputClosed(Channel channel, int closeReason, int appSpecificErrorCode) {}
+    };
+
+    static void addListener(final Context context, final WearableApis.StreamListener listener) {
+        LISTENERS.add(listener);
+        if(WearableApis.hasMockMessageApi()) {
+            // Streams are sent through a real channel, so can't be received alongside a mock MessageApi
+            return;
+        }
+
+        synchronized (LOCK) {
+            if(appContext == null) {
+                appContext = context.getApplicationContext();
+            }
+        }
+
+        WearableApis.makeWearableApiCall(context, CHANNEL, new WearableApis.WearableApiRunnable() {
+            @Override public void run(GoogleApiClient apiClient) {
+                synchronized (LOCK) {
+                    if(registeredClient != apiClient) {
+                        WearableApis.ChannelApi.addListener(apiClient, CHANNEL_LISTENER);
+                        registeredClient = apiClient;
+                    }
+                }
+            }
+        });
+    }
+
+    static void removeListener(final WearableApis.StreamListener listener) {
+        LISTENERS.remove(listener);
+    }
+
+    private static void receive(final Context context, final GoogleApiClient apiClient, final Channel channel) {
+        final Channel.GetInputStreamResult result = channel.getInputStream(apiClient).await();
+        if(!result.getStatus().isSuccess()) {
+            channel.close(apiClient);
+            return;
+        }
+
+        final Object payload;
+        final InputStream in = new BufferedInputStream(result.getInputStream(), BUFFER_SIZE);
+        try {
+            payload = Packager.unpack(context, in);
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to read stream on path " + channel.getPath(), e);
+            return;
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+            result.release();
+            channel.close(apiClient);
+        }
+
+        for(WearableApis.StreamListener listener:LISTENERS) {
+            listener.onStreamReceived(channel.getPath(), channel.getNodeId(), payload);
+        }
+    }
+
+    private StreamReceiver(){}
+
+}
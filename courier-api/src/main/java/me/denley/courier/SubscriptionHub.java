@@ -0,0 +1,280 @@
+package me.denley.courier;
+
+import android.content.Context;
+import android.support.annotation.Nullable;
+
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.wearable.DataApi;
+import com.google.android.gms.wearable.DataEvent;
+import com.google.android.gms.wearable.DataEventBuffer;
+import com.google.android.gms.wearable.DataItem;
+import com.google.android.gms.wearable.MessageApi;
+import com.google.android.gms.wearable.MessageEvent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static me.denley.courier.WearableApis.DATA;
+import static me.denley.courier.WearableApis.MESSAGE;
+
+/**
+ * Routes messages and data items to the generated code that receives them.
+ *
+ * A single MessageListener and DataListener are registered with the Wearable APIs for the whole process,
+ * rather than one for each object that is receiving. Listeners are registered here along with the paths
+ * that they receive, and each event is only passed to the listeners for its path.
+ */
+final class SubscriptionHub {
+
+    private static final Object LOCK = new Object();
+
+    private static final PathIndex<MessageApi.MessageListener> MESSAGE_INDEX = new PathIndex<MessageApi.MessageListener>();
+
+    private static final PathIndex<WearableApis.DataItemListener> DATA_INDEX = new PathIndex<WearableApis.DataItemListener>();
+
+    // The APIs and clients that the hub's listeners are registered with
+    private static MessageApi registeredMessageApi = null;
+    private static GoogleApiClient registeredMessageClient = null;
+    private static DataApi registeredDataApi = null;
+    private static GoogleApiClient registeredDataClient = null;
+
+    private static final MessageApi.MessageListener MESSAGE_LISTENER = new MessageApi.MessageListener() {
+        @Override public void onMessageReceived(MessageEvent messageEvent) {
+            for(MessageApi.MessageListener listener:MESSAGE_INDEX.find(messageEvent.getPath())) {
+                listener.onMessageReceived(messageEvent);
+            }
+        }
+    };
+
+    private static final DataApi.DataListener DATA_LISTENER = new DataApi.DataListener() {
+        @Override public void onDataChanged(DataEventBuffer dataEvents) {
+            BufferCounter.acquired();
+            try {
+                for(DataEvent event:dataEvents) {
+                    final DataItem item = event.getDataItem();
+                    if(event.getType() == DataEvent.TYPE_DELETED) {
+                        // The item may have been deleted by another device, so the same item must be put again
+                        DataDeduplicator.forget(item.getUri().getPath());
+                    }
+                    for(WearableApis.DataItemListener listener:DATA_INDEX.find(item.getUri().getPath())) {
+                        listener.onDataItemChanged(item);
+                    }
+                }
+            } finally {
+                // Listeners decode each item before they return, so nothing refers to the buffer any more.
+                // Releasing it here (rather than when this callback's caller does) frees its memory straight away.
+                BufferCounter.release(dataEvents);
+            }
+        }
+    };
+
+    /**
+     * Registers a listener to be notified of messages received on any of the given paths
+     * (which may be patterns, see {@link PathPattern}).
+     */
+    static void addMessageListener(final Context context, final String[] paths, final MessageApi.MessageListener listener) {
+        synchronized (LOCK) {
+            MESSAGE_INDEX.add(paths, listener);
+        }
+        WearableApis.makeWearableApiCall(context, MESSAGE, new WearableApis.WearableApiRunnable() {
+            @Override public void run(GoogleApiClient apiClient) {
+                synchronized (LOCK) {
+                    if(!MESSAGE_INDEX.isEmpty()) {
+                        ensureMessageListenerRegistered(apiClient);
+                    }
+                }
+            }
+        });
+    }
+
+    static void removeMessageListener(final MessageApi.MessageListener listener) {
+        synchronized (LOCK) {
+            MESSAGE_INDEX.remove(listener);
+            if(MESSAGE_INDEX.isEmpty()) {
+                unregisterMessageListener();
+            }
+        }
+    }
+
+    /** @return True if a listener is registered for messages on the given path. */
+    static boolean hasMessageListener(final String path) {
+        return MESSAGE_INDEX.contains(path);
+    }
+
+    /**
+     * Registers a listener to be notified of data items changed on any of the given paths
+     * (which may be patterns, see {@link PathPattern}).
+     */
+    static void addDataListener(final Context context, final String[] paths, final WearableApis.DataItemListener listener) {
+        synchronized (LOCK) {
+            DATA_INDEX.add(paths, listener);
+        }
+        WearableApis.makeWearableApiCall(context, DATA, new WearableApis.WearableApiRunnable() {
+            @Override public void run(GoogleApiClient apiClient) {
+                synchronized (LOCK) {
+                    if(!DATA_INDEX.isEmpty()) {
+                        ensureDataListenerRegistered(apiClient);
+                    }
+                }
+            }
+        });
+    }
+
+    static void removeDataListener(final WearableApis.DataItemListener listener) {
+        synchronized (LOCK) {
+            DATA_INDEX.remove(listener);
+            if(DATA_INDEX.isEmpty()) {
+                unregisterDataListener();
+            }
+        }
+    }
+
+    // Must be called while holding LOCK
+    private static void ensureMessageListenerRegistered(@Nullable final GoogleApiClient apiClient) {
+        final MessageApi api = WearableApis.MessageApi;
+        if(api == registeredMessageApi && apiClient == registeredMessageClient) {
+            return;
+        }
+
+        unregisterMessageListener();
+        api.addListener(apiClient, MESSAGE_LISTENER);
+        registeredMessageApi = api;
+        registeredMessageClient = apiClient;
+    }
+
+    // Must be called while holding LOCK
+    private static void unregisterMessageListener() {
+        if(registeredMessageApi!=null && (registeredMessageClient==null || registeredMessageClient.isConnected())) {
+            registeredMessageApi.removeListener(registeredMessageClient, MESSAGE_LISTENER);
+        }
+        registeredMessageApi = null;
+        registeredMessageClient = null;
+    }
+
+    // Must be called while holding LOCK
+    private static void ensureDataListenerRegistered(@Nullable final GoogleApiClient apiClient) {
+        final DataApi api = WearableApis.DataApi;
+        if(api == registeredDataApi && apiClient == registeredDataClient) {
+            return;
+        }
+
+        unregisterDataListener();
+        api.addListener(apiClient, DATA_LISTENER);
+        registeredDataApi = api;
+        registeredDataClient = apiClient;
+    }
+
+    // Must be called while holding LOCK
+    private static void unregisterDataListener() {
+        if(registeredDataApi!=null && (registeredDataClient==null || registeredDataClient.isConnected())) {
+            registeredDataApi.removeListener(registeredDataClient, DATA_LISTENER);
+        }
+        registeredDataApi = null;
+        registeredDataClient = null;
+    }
+
+    /**
+     * The listeners for each path. Listeners of exact paths are found with a single lookup, and only the patterns
+     * are checked one by one. It is modified while holding LOCK, and may be read from any thread.
+     */
+    static final class PathIndex<L> {
+
+        private final Map<String, List<L>> exactListeners = new ConcurrentHashMap<String, List<L>>();
+
+        private final List<PatternListener<L>> patternListeners = new CopyOnWriteArrayList<PatternListener<L>>();
+
+        private final Map<L, String[]> registrations = new IdentityHashMap<L, String[]>();
+
+        private static final class PatternListener<L> {
+            final PathPattern pattern;
+            final L listener;
+
+            PatternListener(final PathPattern pattern, final L listener) {
+                this.pattern = pattern;
+                this.listener = listener;
+            }
+        }
+
+        void add(final String[] paths, final L listener) {
+            remove(listener);
+            registrations.put(listener, paths);
+
+            for(String path:paths) {
+                if(PathPattern.isPattern(path)) {
+                    patternListeners.add(new PatternListener<L>(new PathPattern(path), listener));
+                } else {
+                    List<L> listeners = exactListeners.get(path);
+                    if(listeners == null) {
+                        listeners = new CopyOnWriteArrayList<L>();
+                        exactListeners.put(path, listeners);
+                    }
+                    listeners.add(listener);
+                }
+            }
+        }
+
+        void remove(final L listener) {
+            final String[] paths = registrations.remove(listener);
+            if(paths == null) {
+                return;
+            }
+
+            for(String path:paths) {
+                final List<L> listeners = exactListeners.get(path);
+                if(listeners != null) {
+                    listeners.remove(listener);
+                    if(listeners.isEmpty()) {
+                        exactListeners.remove(path);
+                    }
+                }
+            }
+            for(PatternListener<L> patternListener:patternListeners) {
+                if(patternListener.listener == listener) {
+                    patternListeners.remove(patternListener);
+                }
+            }
+        }
+
+        boolean isEmpty() {
+            return registrations.isEmpty();
+        }
+
+        /** @return True if any listener is registered for the given path. */
+        boolean contains(final String path) {
+            if(exactListeners.containsKey(path)) {
+                return true;
+            }
+            for(PatternListener<L> patternListener:patternListeners) {
+                if(patternListener.pattern.match(path) != null) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /** @return The listeners for the given path, each listed once. */
+        List<L> find(final String path) {
+            final List<L> listeners = exactListeners.get(path);
+            if(patternListeners.isEmpty()) {
+                return listeners == null ? Collections.<L>emptyList() : listeners;
+            }
+
+            final List<L> found = listeners == null ? new ArrayList<L>() : new ArrayList<L>(listeners);
+            for(PatternListener<L> patternListener:patternListeners) {
+                if(!found.contains(patternListener.listener) && patternListener.pattern.match(path) != null) {
+                    found.add(patternListener.listener);
+                }
+            }
+            return found;
+        }
+
+    }
+
+    private SubscriptionHub(){}
+
+}
@@ -4,13 +4,19 @@ import android.content.Context;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
-import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.api.CommonStatusCodes;
 import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.wearable.ChannelApi;
 import com.google.android.gms.wearable.DataApi;
+import com.google.android.gms.wearable.DataItem;
 import com.google.android.gms.wearable.MessageApi;
+import com.google.android.gms.wearable.Node;
 import com.google.android.gms.wearable.NodeApi;
 import com.google.android.gms.wearable.Wearable;
 
+import java.util.List;
+import java.util.concurrent.Executor;
+
 /**
  * Methods in this class are for use by generated code.
  * Do not use this directly.
@@ -24,9 +30,11 @@ public class WearableApis {
     public static final int DATA = 0x0010;
     /** For use by generated code, do not use */
     public static final int MESSAGE = 0x0100;
+    /** For use by generated code, do not use */
+    public static final int CHANNEL = 0x1000;
 
     /** For use by generated code, do not use */
-    @Nullable public static GoogleApiClient googleApiClient = null;
+    @Nullable public static volatile GoogleApiClient googleApiClient = null;
 
     /** For use by generated code, do not use */
     @NonNull static DataApi DataApi = Wearable.DataApi;
@@ -37,6 +45,12 @@ public class WearableApis {
     /** For use by generated code, do not use */
     @NonNull static NodeApi NodeApi = Wearable.NodeApi;
 
+    /** For use by generated code, do not use */
+    @NonNull static ChannelApi ChannelApi = Wearable.ChannelApi;
+
+    @Nullable static volatile Dispatcher dispatcher = null;
+    private static final Dispatcher DEFAULT_DISPATCHER = new DefaultDispatcher();
+
     /** For use by generated code, do not use */
     @NonNull public static DataApi getDataApi() {
         return DataApi;
@@ -52,6 +66,187 @@ public class WearableApis {
         return NodeApi;
     }
 
+    /** For use by generated code, do not use */
+    @NonNull public static ChannelApi getChannelApi() {
+        return ChannelApi;
+    }
+
+    /** For use by generated code, do not use */
+    @NonNull public static Executor getExecutor(final String name) {
+        final Dispatcher custom = dispatcher;
+        Executor executor = custom==null ? null : custom.getExecutor(name);
+        if(executor==null) {
+            executor = DEFAULT_DISPATCHER.getExecutor(name);
+        }
+        if(executor==null) {
+            throw new IllegalArgumentException("No executor named \""+name+"\". Did you set a Dispatcher using Courier.setDispatcher?");
+        }
+        return executor;
+    }
+
+    /**
+     * For use by generated code, do not use.
+     *
+     * Runs a delivery that writes a field of the target on the named executor. If that is Courier's main thread
+     * executor, the delivery replaces any delivery to the same field that has not been made yet.
+     */
+    public static void execute(final String executorName, final String path, final Object target, final String field,
+                               final Runnable delivery) {
+        final Executor executor = getExecutor(executorName);
+        if(executor==DefaultDispatcher.MAIN_EXECUTOR) {
+            MainThreadQueue.post(path, target, field, delivery);
+        } else {
+            executor.execute(delivery);
+        }
+    }
+
+    /** For use by generated code, do not use */
+    @NonNull public static Executor getMainThreadExecutor() {
+        return DefaultDispatcher.MAIN_EXECUTOR;
+    }
+
+    /**
+     * For use by generated code, do not use.
+     *
+     * Queues a delivery to a {@link Backpressure} annotated recipient of the target.
+     *
+     * @param recipient The name of the recipient, including its declaring class.
+     * @param executor The executor to call the recipient on, or null to call it on this thread.
+     */
+    public static void deliver(final Object target, final String recipient, final Backpressure.Policy policy,
+                               final int capacity, @Nullable final Executor executor, final Runnable delivery) {
+        Mailbox.get(target, recipient, policy, capacity, executor).offer(delivery);
+    }
+
+    /**
+     * For use by generated code, do not use.
+     *
+     * Returns the cached list of connected nodes (retrieving it first, if necessary).
+     */
+    @NonNull public static List<Node> getConnectedNodes(@Nullable final GoogleApiClient apiClient) {
+        return NodeTopology.getConnectedNodes(apiClient);
+    }
+
+    /** For use by generated code, do not use */
+    public static void addNodeListener(final Context context, final NodeApi.NodeListener listener) {
+        NodeTopology.addListener(context, listener);
+    }
+
+    /** For use by generated code, do not use */
+    public static void removeNodeListener(final NodeApi.NodeListener listener) {
+        NodeTopology.removeListener(listener);
+    }
+
+    /**
+     * For use by generated code, do not use.
+     *
+     * Registers a listener for messages received on any of the given paths (which may be patterns).
+     */
+    public static void addMessageListener(final Context context, final String[] paths, final MessageApi.MessageListener listener) {
+        SubscriptionHub.addMessageListener(context, paths, listener);
+    }
+
+    /** For use by generated code, do not use */
+    public static void removeMessageListener(final MessageApi.MessageListener listener) {
+        SubscriptionHub.removeMessageListener(listener);
+    }
+
+    /** For use by generated code, do not use */
+    public interface DataItemListener {
+        /**
+         * Called on the thread that the DataApi delivers events on, for each changed (or deleted) item.
+         * The item is only valid until this returns (its buffer is then released), so it must be decoded
+         * here rather than passed to another thread.
+         */
+        void onDataItemChanged(DataItem item);
+    }
+
+    /**
+     * For use by generated code, do not use.
+     *
+     * Registers a listener for data items changed on any of the given paths (which may be patterns).
+     */
+    public static void addDataListener(final Context context, final String[] paths, final DataItemListener listener) {
+        SubscriptionHub.addDataListener(context, paths, listener);
+    }
+
+    /** For use by generated code, do not use */
+    public static void removeDataListener(final DataItemListener listener) {
+        SubscriptionHub.removeDataListener(listener);
+    }
+
+    /**
+     * For use by generated code, do not use.
+     *
+     * Retrieves the data items on the given paths (which may be patterns). This must not be called from the main thread.
+     */
+    @NonNull public static List<DataItem> getDataItems(@Nullable final GoogleApiClient apiClient, final String[] paths) {
+        return DataSync.getDataItems(apiClient, paths);
+    }
+
+    /**
+     * For use by generated code, do not use.
+     *
+     * Queues a delivery to be made on the main thread, along with any others queued before the next frame.
+     *
+     * @param path The path that the delivery was received on, or null if it wasn't received on a path.
+     */
+    public static void postToMainThread(@Nullable final String path, final Runnable delivery) {
+        MainThreadQueue.post(path, null, null, delivery);
+    }
+
+    /**
+     * For use by generated code, do not use.
+     *
+     * Queues a delivery that writes a field of the target. It replaces any delivery to the same field that
+     * has not been made yet.
+     */
+    public static void postToMainThread(@Nullable final String path, final Object target, final String field,
+                                        final Runnable delivery) {
+        MainThreadQueue.post(path, target, field, delivery);
+    }
+
+    /**
+     * For use by generated code, do not use.
+     *
+     * Unpacks a received message (see {@link Packager#unpack(Context, byte[], Class)}), and records its metrics.
+     */
+    public static <T> T unpack(final Context context, final String path, final byte[] data, final Class<T> targetClass) {
+        final long start = Metrics.start();
+        final T unpacked = Packager.unpack(context, data, targetClass);
+        Metrics.record(path, PathMetrics.Stage.UNPACK, data==null ? 0 : data.length, start);
+        return unpacked;
+    }
+
+    /**
+     * For use by generated code, do not use.
+     *
+     * Unpacks a received data item (see {@link Packager#unpack(Context, DataItem, Class)}), and records its metrics.
+     */
+    public static <T> T unpack(final Context context, final String path, final DataItem data, final Class<T> targetClass) {
+        final long start = Metrics.start();
+        final T unpacked = Packager.unpack(context, data, targetClass);
+        final byte[] bytes = data.getData();
+        Metrics.record(path, PathMetrics.Stage.UNPACK, bytes==null ? 0 : bytes.length, start);
+        return unpacked;
+    }
+
+    /** For use by generated code, do not use */
+    public interface StreamListener {
+        /** Called on a background thread, once the object has been read from the stream. */
+        void onStreamReceived(String path, String nodeId, @Nullable Object payload);
+    }
+
+    /** For use by generated code, do not use */
+    public static void addStreamListener(final Context context, final StreamListener listener) {
+        StreamReceiver.addListener(context, listener);
+    }
+
+    /** For use by generated code, do not use */
+    public static void removeStreamListener(final StreamListener listener) {
+        StreamReceiver.removeListener(listener);
+    }
+
     /** For use by generated code, do not use */
     public static boolean hasMockDataApi() {
         return DataApi!=Wearable.DataApi;
@@ -72,24 +267,17 @@ public class WearableApis {
         return hasMockDataApi() && hasMockNodeApi() && hasMockMessageApi();
     }
 
-    /** For use by generated code, do not use */
+    /**
+     * For use by generated code, do not use.
+     *
+     * Blocks until the shared GoogleApiClient is connected. If the connection fails, {@link #googleApiClient} will be null.
+     */
     static void ensureApiClient(final Context context) {
-        if(googleApiClient!=null && googleApiClient.isConnected()) {
-            return;
-        }
         if(WearableApis.hasAllMockApis()) {
             return;
         }
 
-        googleApiClient = new GoogleApiClient.Builder(context)
-                .addApi(Wearable.API)
-                .build();
-
-        final ConnectionResult result = googleApiClient.blockingConnect();
-
-        if(!result.isSuccess()) {
-            googleApiClient = null;
-        }
+        ApiClientConnection.awaitConnection(context);
     }
 
     /** For use by generated code, do not use */
@@ -99,23 +287,79 @@ public class WearableApis {
 
     /** For use by generated code, do not use */
     public static void makeWearableApiCall(final Context context, final int apis, final WearableApiRunnable task) {
+        makeWearableApiCall(context, apis, null, task);
+    }
+
+    /**
+     * For use by generated code, do not use.
+     *
+     * Calls made with the same path are run in the order that they were made.
+     */
+    public static void makeWearableApiCall(final Context context, final int apis, @Nullable final String path, final WearableApiRunnable task) {
+        makeWearableApiCall(context, apis, path, null, task);
+    }
+
+    /**
+     * Makes a Wearable API call, as part of the operation represented by the given Receipt.
+     *
+     * The Receipt fails if the call can't be made. Otherwise, the call's part of the operation completes
+     * after the task has run. Any API calls made by the task that must complete before the operation
+     * completes should be passed to {@link Receipt#track}.
+     */
+    static void makeWearableApiCall(final Context context, final int apis, @Nullable final String path,
+                                    @Nullable final Receipt receipt, final WearableApiRunnable task) {
         final boolean mockMode =
                 ((apis&NODE)==0 || hasMockNodeApi())
                 && ((apis&DATA)==0 || hasMockDataApi())
-                && ((apis&MESSAGE)==0 || hasMockMessageApi());
-
-        new Thread(){
-            public void run() {
-                if(mockMode) {
-                    task.run(null);
-                } else {
-                    ensureApiClient(context);
-                    if (googleApiClient != null) {
-                        task.run(googleApiClient);
+                && ((apis&MESSAGE)==0 || hasMockMessageApi())
+                && (apis&CHANNEL)==0; // The ChannelApi can't be mocked
+
+        final long queuedAt = Metrics.start();
+        if(mockMode) {
+            execute(path, receipt, task, null, queuedAt);
+            return;
+        }
+
+        // Calls made while connecting are queued, and dispatched as soon as the connection is made
+        ApiClientConnection.whenConnected(context, new Runnable() {
+            @Override public void run() {
+                final GoogleApiClient apiClient = googleApiClient;
+                if (apiClient != null) {
+                    execute(path, receipt, task, apiClient, queuedAt);
+                } else if (receipt != null) {
+                    receipt.fail(Receipt.STATUS_UNAVAILABLE);
+                }
+            }
+        });
+    }
+
+    private static void execute(@Nullable final String path, @Nullable final Receipt receipt,
+                                final WearableApiRunnable task, @Nullable final GoogleApiClient apiClient,
+                                final long queuedAt) {
+        final boolean accepted = WorkerPool.execute(path, new Runnable() {
+            @Override public void run() {
+                Metrics.record(path, PathMetrics.Stage.QUEUE, 0, queuedAt);
+                final long start = Metrics.start();
+                try {
+                    task.run(apiClient);
+                } catch (RuntimeException e) {
+                    if(receipt != null) {
+                        receipt.fail(CommonStatusCodes.ERROR);
                     }
+                    throw e;
+                } finally {
+                    Metrics.record(path, PathMetrics.Stage.API_CALL, 0, start);
+                }
+
+                if(receipt != null) {
+                    receipt.completePart(null);
                 }
             }
-        }.start();
+        });
+
+        if(!accepted && receipt != null) {
+            receipt.fail(Receipt.STATUS_REJECTED);
+        }
     }
 
 }
@@ -0,0 +1,697 @@
+package me.denley.courier;
+
+import android.content.Context;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+
+/**
+ * Methods in this class are for use by generated code.
+ * Do not use this directly.
+ *
+ * Reads and writes the compact tagged format used to send {@link Deliverable} objects as messages
+ * (without first converting them to a DataMap).
+ *
+ * Each field is written as a varint key, made up of its field number and wire type, followed by its value.
+ * Null fields are not written. Fields with unknown keys are skipped when reading.
+ */
+@SuppressWarnings("unused")
+public final class Wire {
+
+    /** Wire type of a zigzag encoded varint (booleans, bytes, ints, and longs) */
+    public static final int VARINT = 0;
+
+    /** Wire type of an 8 byte value (doubles) */
+    public static final int FIXED64 = 1;
+
+    /** Wire type of a varint length followed by that many bytes (Strings, arrays, and lists) */
+    public static final int LENGTH_DELIMITED = 2;
+
+    /** Wire type of a 4 byte value (floats) */
+    public static final int FIXED32 = 5;
+
+    /**
+     * Wire type of a nested object: a 4 byte length followed by that many bytes. The fixed size length
+     * can be filled in after the object is written, so nested objects don't need to be measured twice.
+     */
+    public static final int NESTED = 6;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** The length of a null item in a list or array */
+    private static final int NULL_ITEM = -1;
+
+
+    /** @return The key for a field with the given number and wire type. */
+    public static int key(int field, int wireType) {
+        return (field << 3) | wireType;
+    }
+
+    /** @return The key of the next field. */
+    public static int readKey(ByteBuffer buffer) {
+        return (int) readRawVarint(buffer);
+    }
+
+    /** Skips the value of a field with the given key. */
+    public static void skip(ByteBuffer buffer, int key) {
+        switch (key & 7) {
+            case VARINT:
+                readRawVarint(buffer);
+                break;
+            case FIXED64:
+                buffer.position(buffer.position() + 8);
+                break;
+            case LENGTH_DELIMITED:
+                final int length = (int) readRawVarint(buffer);
+                buffer.position(buffer.position() + length);
+                break;
+            case FIXED32:
+                buffer.position(buffer.position() + 4);
+                break;
+            case NESTED:
+                buffer.position(buffer.position() + 4 + buffer.getInt(buffer.position()));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown wire type: " + (key & 7));
+        }
+    }
+
+
+    // Varints
+
+    private static int sizeOfRawVarint(long value) {
+        int size = 1;
+        while((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static void writeRawVarint(ByteBuffer buffer, long value) {
+        while((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static long readRawVarint(ByteBuffer buffer) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while((b & 0x80) != 0);
+        return value;
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static int sizeOfKey(int field, int wireType) {
+        return sizeOfRawVarint(key(field, wireType));
+    }
+
+    private static void writeKey(ByteBuffer buffer, int field, int wireType) {
+        writeRawVarint(buffer, key(field, wireType));
+    }
+
+
+    // Primitives
+
+    public static int sizeOfBoolean(int field, boolean value) {
+        return sizeOfKey(field, VARINT) + 1;
+    }
+
+    public static int sizeOfBoolean(int field, Boolean value) {
+        return value == null ? 0 : sizeOfBoolean(field, value.booleanValue());
+    }
+
+    public static void writeBoolean(ByteBuffer buffer, int field, boolean value) {
+        writeKey(buffer, field, VARINT);
+        buffer.put((byte) (value ? 1 : 0));
+    }
+
+    public static void writeBoolean(ByteBuffer buffer, int field, Boolean value) {
+        if(value != null) {
+            writeBoolean(buffer, field, value.booleanValue());
+        }
+    }
+
+    public static boolean readBoolean(ByteBuffer buffer) {
+        return readRawVarint(buffer) != 0;
+    }
+
+    public static int sizeOfByte(int field, byte value) {
+        return sizeOfLong(field, value);
+    }
+
+    public static int sizeOfByte(int field, Byte value) {
+        return value == null ? 0 : sizeOfLong(field, value.longValue());
+    }
+
+    public static void writeByte(ByteBuffer buffer, int field, byte value) {
+        writeLong(buffer, field, value);
+    }
+
+    public static void writeByte(ByteBuffer buffer, int field, Byte value) {
+        if(value != null) {
+            writeLong(buffer, field, value.longValue());
+        }
+    }
+
+    public static byte readByte(ByteBuffer buffer) {
+        return (byte) readLong(buffer);
+    }
+
+    public static int sizeOfInt(int field, int value) {
+        return sizeOfLong(field, value);
+    }
+
+    public static int sizeOfInt(int field, Integer value) {
+        return value == null ? 0 : sizeOfLong(field, value.longValue());
+    }
+
+    public static void writeInt(ByteBuffer buffer, int field, int value) {
+        writeLong(buffer, field, value);
+    }
+
+    public static void writeInt(ByteBuffer buffer, int field, Integer value) {
+        if(value != null) {
+            writeLong(buffer, field, value.longValue());
+        }
+    }
+
+    public static int readInt(ByteBuffer buffer) {
+        return (int) readLong(buffer);
+    }
+
+    public static int sizeOfLong(int field, long value) {
+        return sizeOfKey(field, VARINT) + sizeOfRawVarint(zigzag(value));
+    }
+
+    public static int sizeOfLong(int field, Long value) {
+        return value == null ? 0 : sizeOfLong(field, value.longValue());
+    }
+
+    public static void writeLong(ByteBuffer buffer, int field, long value) {
+        writeKey(buffer, field, VARINT);
+        writeRawVarint(buffer, zigzag(value));
+    }
+
+    public static void writeLong(ByteBuffer buffer, int field, Long value) {
+        if(value != null) {
+            writeLong(buffer, field, value.longValue());
+        }
+    }
+
+    public static long readLong(ByteBuffer buffer) {
+        return unzigzag(readRawVarint(buffer));
+    }
+
+    public static int sizeOfFloat(int field, float value) {
+        return sizeOfKey(field, FIXED32) + 4;
+    }
+
+    public static int sizeOfFloat(int field, Float value) {
+        return value == null ? 0 : sizeOfFloat(field, value.floatValue());
+    }
+
+    public static void writeFloat(ByteBuffer buffer, int field, float value) {
+        writeKey(buffer, field, FIXED32);
+        buffer.putFloat(value);
+    }
+
+    public static void writeFloat(ByteBuffer buffer, int field, Float value) {
+        if(value != null) {
+            writeFloat(buffer, field, value.floatValue());
+        }
+    }
+
+    public static float readFloat(ByteBuffer buffer) {
+        return buffer.getFloat();
+    }
+
+    public static int sizeOfDouble(int field, double value) {
+        return sizeOfKey(field, FIXED64) + 8;
+    }
+
+    public static int sizeOfDouble(int field, Double value) {
+        return value == null ? 0 : sizeOfDouble(field, value.doubleValue());
+    }
+
+    public static void writeDouble(ByteBuffer buffer, int field, double value) {
+        writeKey(buffer, field, FIXED64);
+        buffer.putDouble(value);
+    }
+
+    public static void writeDouble(ByteBuffer buffer, int field, Double value) {
+        if(value != null) {
+            writeDouble(buffer, field, value.doubleValue());
+        }
+    }
+
+    public static double readDouble(ByteBuffer buffer) {
+        return buffer.getDouble();
+    }
+
+
+    // Strings
+
+    public static int sizeOfString(int field, String value) {
+        if(value == null) {
+            return 0;
+        }
+        final int length = utf8Length(value);
+        return sizeOfKey(field, LENGTH_DELIMITED) + sizeOfRawVarint(length) + length;
+    }
+
+    public static void writeString(ByteBuffer buffer, int field, String value) {
+        if(value != null) {
+            writeKey(buffer, field, LENGTH_DELIMITED);
+            writeUtf8(buffer, value);
+        }
+    }
+
+    public static String readString(ByteBuffer buffer) {
+        return readUtf8(buffer, (int) readRawVarint(buffer));
+    }
+
+    /** @return The number of bytes needed to encode the String as UTF-8, without encoding it. */
+    private static int utf8Length(String value) {
+        final int length = value.length();
+        int bytes = 0;
+        for(int i=0; i<length; i++) {
+            final char c = value.charAt(i);
+            if(c < 0x80) {
+                bytes += 1;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    /** Writes the varint length of the String, followed by the String encoded as UTF-8. */
+    private static void writeUtf8(ByteBuffer buffer, String value) {
+        writeRawVarint(buffer, utf8Length(value));
+
+        final int length = value.length();
+        for(int i=0; i<length; i++) {
+            final char c = value.charAt(i);
+            if(c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                final int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer.put((byte) (0xF0 | (codePoint >> 18)));
+                buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+            } else {
+                buffer.put((byte) (0xE0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    private static String readUtf8(ByteBuffer buffer, int length) {
+        final String value;
+        if(buffer.hasArray()) {
+            value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, UTF_8);
+            buffer.position(buffer.position() + length);
+        } else {
+            final byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            value = new String(bytes, UTF_8);
+        }
+        return value;
+    }
+
+
+    // Arrays and lists
+
+    public static int sizeOfBytes(int field, byte[] value) {
+        return value == null ? 0 : sizeOfLengthDelimited(field, value.length);
+    }
+
+    public static void writeBytes(ByteBuffer buffer, int field, byte[] value) {
+        if(value != null) {
+            writeKey(buffer, field, LENGTH_DELIMITED);
+            writeRawVarint(buffer, value.length);
+            buffer.put(value);
+        }
+    }
+
+    public static byte[] readBytes(ByteBuffer buffer) {
+        final byte[] value = new byte[(int) readRawVarint(buffer)];
+        buffer.get(value);
+        return value;
+    }
+
+    public static int sizeOfFloats(int field, float[] value) {
+        return value == null ? 0 : sizeOfLengthDelimited(field, value.length * 4);
+    }
+
+    public static void writeFloats(ByteBuffer buffer, int field, float[] value) {
+        if(value != null) {
+            writeKey(buffer, field, LENGTH_DELIMITED);
+            writeRawVarint(buffer, value.length * 4);
+            for(float item:value) {
+                buffer.putFloat(item);
+            }
+        }
+    }
+
+    public static float[] readFloats(ByteBuffer buffer) {
+        final float[] value = new float[(int) readRawVarint(buffer) / 4];
+        for(int i=0; i<value.length; i++) {
+            value[i] = buffer.getFloat();
+        }
+        return value;
+    }
+
+    public static int sizeOfLongs(int field, long[] value) {
+        if(value == null) {
+            return 0;
+        }
+        int length = 0;
+        for(long item:value) {
+            length += sizeOfRawVarint(zigzag(item));
+        }
+        return sizeOfLengthDelimited(field, length);
+    }
+
+    public static void writeLongs(ByteBuffer buffer, int field, long[] value) {
+        if(value != null) {
+            int length = 0;
+            for(long item:value) {
+                length += sizeOfRawVarint(zigzag(item));
+            }
+            writeKey(buffer, field, LENGTH_DELIMITED);
+            writeRawVarint(buffer, length);
+            for(long item:value) {
+                writeRawVarint(buffer, zigzag(item));
+            }
+        }
+    }
+
+    public static long[] readLongs(ByteBuffer buffer) {
+        final int end = (int) readRawVarint(buffer) + buffer.position();
+        long[] value = new long[8];
+        int count = 0;
+        while(buffer.position() < end) {
+            if(count == value.length) {
+                final long[] larger = new long[value.length * 2];
+                System.arraycopy(value, 0, larger, 0, count);
+                value = larger;
+            }
+            value[count++] = unzigzag(readRawVarint(buffer));
+        }
+
+        if(count == value.length) {
+            return value;
+        }
+        final long[] trimmed = new long[count];
+        System.arraycopy(value, 0, trimmed, 0, count);
+        return trimmed;
+    }
+
+    public static int sizeOfStrings(int field, String[] value) {
+        if(value == null) {
+            return 0;
+        }
+        int length = sizeOfRawVarint(value.length);
+        for(String item:value) {
+            length += sizeOfStringItem(item);
+        }
+        return sizeOfLengthDelimited(field, length);
+    }
+
+    public static void writeStrings(ByteBuffer buffer, int field, String[] value) {
+        if(value != null) {
+            int length = sizeOfRawVarint(value.length);
+            for(String item:value) {
+                length += sizeOfStringItem(item);
+            }
+            writeKey(buffer, field, LENGTH_DELIMITED);
+            writeRawVarint(buffer, length);
+            writeRawVarint(buffer, value.length);
+            for(String item:value) {
+                writeStringItem(buffer, item);
+            }
+        }
+    }
+
+    public static String[] readStrings(ByteBuffer buffer) {
+        readRawVarint(buffer);
+        final String[] value = new String[(int) readRawVarint(buffer)];
+        for(int i=0; i<value.length; i++) {
+            value[i] = readStringItem(buffer);
+        }
+        return value;
+    }
+
+    public static int sizeOfStringList(int field, ArrayList<String> value) {
+        if(value == null) {
+            return 0;
+        }
+        int length = sizeOfRawVarint(value.size());
+        for(int i=0; i<value.size(); i++) {
+            length += sizeOfStringItem(value.get(i));
+        }
+        return sizeOfLengthDelimited(field, length);
+    }
+
+    public static void writeStringList(ByteBuffer buffer, int field, ArrayList<String> value) {
+        if(value != null) {
+            int length = sizeOfRawVarint(value.size());
+            for(int i=0; i<value.size(); i++) {
+                length += sizeOfStringItem(value.get(i));
+            }
+            writeKey(buffer, field, LENGTH_DELIMITED);
+            writeRawVarint(buffer, length);
+            writeRawVarint(buffer, value.size());
+            for(int i=0; i<value.size(); i++) {
+                writeStringItem(buffer, value.get(i));
+            }
+        }
+    }
+
+    public static ArrayList<String> readStringList(ByteBuffer buffer) {
+        readRawVarint(buffer);
+        final int size = (int) readRawVarint(buffer);
+        final ArrayList<String> value = new ArrayList<String>(size);
+        for(int i=0; i<size; i++) {
+            value.add(readStringItem(buffer));
+        }
+        return value;
+    }
+
+    public static int sizeOfIntegerList(int field, ArrayList<Integer> value) {
+        if(value == null) {
+            return 0;
+        }
+        int length = sizeOfRawVarint(value.size());
+        for(int i=0; i<value.size(); i++) {
+            length += sizeOfIntegerItem(value.get(i));
+        }
+        return sizeOfLengthDelimited(field, length);
+    }
+
+    public static void writeIntegerList(ByteBuffer buffer, int field, ArrayList<Integer> value) {
+        if(value != null) {
+            int length = sizeOfRawVarint(value.size());
+            for(int i=0; i<value.size(); i++) {
+                length += sizeOfIntegerItem(value.get(i));
+            }
+            writeKey(buffer, field, LENGTH_DELIMITED);
+            writeRawVarint(buffer, length);
+            writeRawVarint(buffer, value.size());
+            for(int i=0; i<value.size(); i++) {
+                final Integer item = value.get(i);
+                if(item == null) {
+                    buffer.put((byte) 0);
+                } else {
+                    buffer.put((byte) 1);
+                    writeRawVarint(buffer, zigzag(item));
+                }
+            }
+        }
+    }
+
+    public static ArrayList<Integer> readIntegerList(ByteBuffer buffer) {
+        readRawVarint(buffer);
+        final int size = (int) readRawVarint(buffer);
+        final ArrayList<Integer> value = new ArrayList<Integer>(size);
+        for(int i=0; i<size; i++) {
+            value.add(buffer.get() == 0 ? null : (int) unzigzag(readRawVarint(buffer)));
+        }
+        return value;
+    }
+
+    private static int sizeOfLengthDelimited(int field, int length) {
+        return sizeOfKey(field, LENGTH_DELIMITED) + sizeOfRawVarint(length) + length;
+    }
+
+    private static int sizeOfStringItem(String item) {
+        if(item == null) {
+            return 1;
+        }
+        final int length = utf8Length(item);
+        return 1 + sizeOfRawVarint(length) + length;
+    }
+
+    private static void writeStringItem(ByteBuffer buffer, String item) {
+        if(item == null) {
+            buffer.put((byte) 0);
+        } else {
+            buffer.put((byte) 1);
+            writeUtf8(buffer, item);
+        }
+    }
+
+    private static String readStringItem(ByteBuffer buffer) {
+        return buffer.get() == 0 ? null : readUtf8(buffer, (int) readRawVarint(buffer));
+    }
+
+    private static int sizeOfIntegerItem(Integer item) {
+        return item == null ? 1 : 1 + sizeOfRawVarint(zigzag(item));
+    }
+
+
+    // Nested objects
+
+    /**
+     * @return The size of the nested object, or -1 if its class does not support this format.
+     */
+    public static int sizeOfDeliverable(int field, Object value) {
+        if(value == null) {
+            return 0;
+        }
+
+        final int size = sizeOfNestedItem(value);
+        return size < 0 ? -1 : sizeOfKey(field, NESTED) + size;
+    }
+
+    public static void writeDeliverable(ByteBuffer buffer, int field, Object value) {
+        if(value != null) {
+            writeKey(buffer, field, NESTED);
+            writeNestedItem(buffer, value);
+        }
+    }
+
+    public static <T> T readDeliverable(Context context, ByteBuffer buffer, Class<T> itemClass) {
+        return readNestedItem(context, buffer, getWirePackager(itemClass));
+    }
+
+    /**
+     * @return The size of the list, or -1 if the class of any of its items does not support this format.
+     */
+    public static int sizeOfDeliverableList(int field, ArrayList<?> value) {
+        if(value == null) {
+            return 0;
+        }
+
+        int size = sizeOfKey(field, NESTED) + 4 + sizeOfRawVarint(value.size());
+        for(int i=0; i<value.size(); i++) {
+            final int itemSize = sizeOfNestedItem(value.get(i));
+            if(itemSize < 0) {
+                return -1;
+            }
+            size += itemSize;
+        }
+        return size;
+    }
+
+    public static void writeDeliverableList(ByteBuffer buffer, int field, ArrayList<?> value) {
+        if(value != null) {
+            writeKey(buffer, field, NESTED);
+            final int lengthPosition = buffer.position();
+            buffer.putInt(0);
+            writeRawVarint(buffer, value.size());
+            for(int i=0; i<value.size(); i++) {
+                writeNestedItem(buffer, value.get(i));
+            }
+            buffer.putInt(lengthPosition, buffer.position() - lengthPosition - 4);
+        }
+    }
+
+    public static <T> ArrayList<T> readDeliverableList(Context context, ByteBuffer buffer, Class<T> itemClass) {
+        final Packager.WirePackager<T> packager = getWirePackager(itemClass);
+        buffer.getInt();
+        final int size = (int) readRawVarint(buffer);
+        final ArrayList<T> value = new ArrayList<T>(size);
+        for(int i=0; i<size; i++) {
+            value.add(readNestedItem(context, buffer, packager));
+        }
+        return value;
+    }
+
+    // A nested item is its 4 byte length (or NULL_ITEM) followed by its fields
+
+    @SuppressWarnings("unchecked")
+    private static int sizeOfNestedItem(Object item) {
+        if(item == null) {
+            return 4;
+        }
+
+        final Packager.WirePackager packager = Packager.getWirePackager(item.getClass());
+        final int size = packager == null ? -1 : packager.sizeOf(item);
+        return size < 0 ? -1 : 4 + size;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void writeNestedItem(ByteBuffer buffer, Object item) {
+        if(item == null) {
+            buffer.putInt(NULL_ITEM);
+            return;
+        }
+
+        final int lengthPosition = buffer.position();
+        buffer.putInt(0);
+        final Packager.WirePackager packager = Packager.getWirePackager(item.getClass());
+        packager.write(item, buffer);
+        buffer.putInt(lengthPosition, buffer.position() - lengthPosition - 4);
+    }
+
+    private static <T> T readNestedItem(Context context, ByteBuffer buffer, Packager.WirePackager<T> packager) {
+        final int length = buffer.getInt();
+        if(length == NULL_ITEM) {
+            return null;
+        }
+
+        final ByteBuffer item = buffer.slice();
+        item.limit(length);
+        buffer.position(buffer.position() + length);
+        return packager.read(context, item);
+    }
+
+    private static <T> Packager.WirePackager<T> getWirePackager(Class<T> itemClass) {
+        final Packager.WirePackager<T> packager = Packager.getWirePackager(itemClass);
+        if(packager == null) {
+            throw new IllegalArgumentException("Unable to find packager for " + itemClass.getName());
+        }
+        return packager;
+    }
+
+    private Wire(){}
+
+}
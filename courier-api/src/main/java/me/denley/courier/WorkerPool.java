@@ -0,0 +1,216 @@
+package me.denley.courier;
+
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A shared, bounded pool of named worker threads on which Wearable API calls are made.
+ *
+ * Tasks submitted with the same key (usually a Wearable API path) are run one at a time,
+ * in the order that they were submitted. Tasks without a key may run in any order.
+ */
+final class WorkerPool {
+
+    private static final String TAG = "Courier";
+
+    private static final int THREAD_COUNT = 4;
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    /** The maximum number of tasks that may be waiting or running at any one time. */
+    private static final int MAX_PENDING_TASKS = 512;
+
+    private static final ThreadPoolExecutor EXECUTOR;
+    static {
+        EXECUTOR = new ThreadPoolExecutor(THREAD_COUNT, THREAD_COUNT,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(MAX_PENDING_TASKS),
+                new WorkerThreadFactory("Courier-worker"),
+                new ThreadPoolExecutor.AbortPolicy());
+        EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    /** The number of threads that stream objects through channels. */
+    private static final int TRANSFER_THREAD_COUNT = 2;
+
+    /** The maximum number of channel transfers that may be waiting for a thread at any one time. */
+    private static final int MAX_PENDING_TRANSFERS = 64;
+
+    // Channel transfers block for as long as the whole object takes to send or receive,
+    // so they are kept off the pool's threads to avoid holding up other API calls
+    private static final ThreadPoolExecutor TRANSFER_EXECUTOR;
+    static {
+        TRANSFER_EXECUTOR = new ThreadPoolExecutor(TRANSFER_THREAD_COUNT, TRANSFER_THREAD_COUNT,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(MAX_PENDING_TRANSFERS),
+                new WorkerThreadFactory("Courier-transfer"),
+                new ThreadPoolExecutor.AbortPolicy());
+        TRANSFER_EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    // Used only to schedule delayed tasks onto the executor, never to run them
+    private static final ScheduledThreadPoolExecutor TIMER =
+            new ScheduledThreadPoolExecutor(1, new WorkerThreadFactory("Courier-timer"));
+
+    private static final AtomicInteger PENDING = new AtomicInteger();
+    private static final Map<String, Lane> LANES = new HashMap<String, Lane>();
+
+
+    /**
+     * Submits a task to the pool.
+     *
+     * If too many tasks are already waiting, the task is dropped (and a warning is logged).
+     *
+     * @param key   The key of the lane to run the task in, or null to run it in no particular order.
+     * @param task  The task to run.
+     * @return True if the task was accepted, false if it was rejected.
+     */
+    static boolean execute(@Nullable final String key, final Runnable task) {
+        if(PENDING.incrementAndGet() > MAX_PENDING_TASKS) {
+            PENDING.decrementAndGet();
+            Log.w(TAG, "Too many pending Wearable API calls, dropping call"
+                    + (key == null ? "" : " on path " + key));
+            return false;
+        }
+
+        final Runnable counted = new Runnable() {
+            @Override public void run() {
+                try {
+                    task.run();
+                } finally {
+                    PENDING.decrementAndGet();
+                }
+            }
+        };
+
+        if(key == null) {
+            EXECUTOR.execute(counted);
+        } else {
+            synchronized (LANES) {
+                Lane lane = LANES.get(key);
+                if(lane == null) {
+                    lane = new Lane(key);
+                    LANES.put(key, lane);
+                }
+                lane.enqueue(counted);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Runs a channel transfer on one of the transfer threads, rather than on the pool.
+     *
+     * If too many transfers are already waiting, the task is dropped (and a warning is logged).
+     *
+     * @param path  The path of the channel.
+     * @param task  The task that writes to or reads from the channel.
+     * @return True if the task was accepted, false if it was rejected.
+     */
+    static boolean executeTransfer(final String path, final Runnable task) {
+        try {
+            TRANSFER_EXECUTOR.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            Log.w(TAG, "Too many pending channel transfers, dropping transfer on path " + path);
+            return false;
+        }
+    }
+
+    /**
+     * Submits a task to the pool after the given delay.
+     *
+     * If the task is rejected when the delay has passed (see {@link #execute}), the rejection handler is run
+     * instead, on the timer thread.
+     *
+     * @param key   The key of the lane to run the task in, or null to run it in no particular order.
+     * @param task  The task to run.
+     * @param delayMillis The time to wait before submitting the task, in milliseconds.
+     * @param onRejected The task to run if the task is rejected, which should clean up anything waiting for it.
+     */
+    static void schedule(@Nullable final String key, final Runnable task, final long delayMillis,
+                         final Runnable onRejected) {
+        TIMER.schedule(new Runnable() {
+            @Override public void run() {
+                if(!execute(key, task)) {
+                    onRejected.run();
+                }
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * A queue of tasks that are run one at a time on the shared executor.
+     * All access must be synchronized on {@link #LANES}.
+     */
+    private static final class Lane implements Runnable {
+
+        private final String key;
+        private final Queue<Runnable> tasks = new ArrayDeque<Runnable>();
+        private boolean active = false;
+
+        Lane(String key) {
+            this.key = key;
+        }
+
+        void enqueue(Runnable task) {
+            tasks.add(task);
+            if(!active) {
+                active = true;
+                EXECUTOR.execute(this);
+            }
+        }
+
+        @Override public void run() {
+            final Runnable task;
+            synchronized (LANES) {
+                task = tasks.poll();
+            }
+
+            try {
+                if(task != null) {
+                    task.run();
+                }
+            } finally {
+                synchronized (LANES) {
+                    if(tasks.isEmpty()) {
+                        active = false;
+                        LANES.remove(key);
+                    } else {
+                        // Go to the back of the executor's queue, so that a busy lane can't starve others
+                        EXECUTOR.execute(this);
+                    }
+                }
+            }
+        }
+    }
+
+    private static final class WorkerThreadFactory implements ThreadFactory {
+        private final String name;
+        private final AtomicInteger count = new AtomicInteger();
+
+        WorkerThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override public Thread newThread(Runnable runnable) {
+            final Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    private WorkerPool(){}
+
+}
@@ -0,0 +1,74 @@
+package me.denley.courier;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that operations which never reach the Wearable API (because they were rejected or superseded)
+ * still release their in-flight permits.
+ */
+public class InFlightLimiterTest {
+
+    private static final String PATH = "/in_flight_test";
+
+    @After public void tearDown() {
+        Courier.disableDataCoalescing(PATH);
+        Courier.setDataInFlightLimit(0, false);
+    }
+
+    @Test public void rejectedReceiptsReleaseTheirPermits() {
+        Courier.setDataInFlightLimit(2, false);
+
+        final Receipt first = InFlightLimiter.data.start();
+        final Receipt second = InFlightLimiter.data.start();
+        assertEquals(2, Courier.getDataInFlightCount());
+
+        // Rejected by the limiter, so it never holds a permit
+        final Receipt third = InFlightLimiter.data.start();
+        assertStatus(Receipt.STATUS_REJECTED, third);
+        assertEquals(2, Courier.getDataInFlightCount());
+
+        // Rejected later on, as when the worker pool or a delayed flush is full
+        first.fail(Receipt.STATUS_REJECTED);
+        second.fail(Receipt.STATUS_REJECTED);
+        assertEquals(0, Courier.getDataInFlightCount());
+    }
+
+    @Test public void supersededReceiptsReleaseTheirPermits() {
+        Courier.setDataInFlightLimit(2, false);
+        Courier.enableDataCoalescing(PATH, 60000);
+
+        // Each item is held back by the coalescer, so no API call (or Context) is needed
+        final Receipt first = Courier.deliverData(null, PATH, "first");
+        final Receipt second = Courier.deliverData(null, PATH, "second");
+        assertStatus(Receipt.STATUS_SUPERSEDED, first);
+        assertEquals(1, Courier.getDataInFlightCount());
+
+        DataCoalescer.cancel(PATH);
+        assertStatus(Receipt.STATUS_SUPERSEDED, second);
+        assertEquals(0, Courier.getDataInFlightCount());
+    }
+
+    @Test public void countReturnsToZeroAfterManyOperations() {
+        Courier.setDataInFlightLimit(4, false);
+        Courier.enableDataCoalescing(PATH, 60000);
+
+        for(int i=0; i<1000; i++) {
+            Courier.deliverData(null, PATH, i);
+            InFlightLimiter.data.start().fail(Receipt.STATUS_REJECTED);
+        }
+        assertEquals(1, Courier.getDataInFlightCount());
+
+        DataCoalescer.cancel(PATH);
+        assertEquals(0, Courier.getDataInFlightCount());
+    }
+
+    private static void assertStatus(final int statusCode, final Receipt receipt) {
+        assertTrue(receipt.isDone());
+        assertEquals(statusCode, receipt.getStatus().getStatusCode());
+    }
+
+}
@@ -0,0 +1,71 @@
+package me.denley.courier;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Checks that packing a tagged, primitive-only {@link Deliverable} allocates nothing but the payload array
+ * once the per-thread encoding buffers have been created (see {@link BufferPool}).
+ */
+public class PackagerAllocationTest {
+
+    private static final int WARM_UP_CALLS = 100000;
+    private static final int MEASURED_CALLS = 100000;
+
+    @Test public void packBytesOnlyAllocatesThePayload() {
+        final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+
+        // Only the Wire format is written without an intermediate DataMap
+        assertNotNull(Packager.getWirePackager(PrimitiveReading.class));
+
+        final PrimitiveReading reading = new PrimitiveReading();
+        reading.x = 1;
+        reading.y = 2;
+        reading.z = 3;
+        reading.accuracy = 3;
+        reading.valid = true;
+
+        int payloadLength = 0;
+        for(int i=0; i<WARM_UP_CALLS; i++) {
+            reading.timestamp = i;
+            payloadLength = Packager.packBytes(reading).length;
+        }
+
+        final long threadId = Thread.currentThread().getId();
+        final long before = threads.getThreadAllocatedBytes(threadId);
+        for(int i=0; i<MEASURED_CALLS; i++) {
+            reading.timestamp = i;
+            Packager.packBytes(reading);
+        }
+        final long bytesPerCall = (threads.getThreadAllocatedBytes(threadId) - before) / MEASURED_CALLS;
+
+        // An array has a header of up to 24 bytes, and its size is rounded up to a multiple of 8 bytes.
+        // Any other object would take at least another 16 bytes.
+        final long payloadArraySize = (24 + payloadLength + 7) / 8 * 8;
+        assertTrue("packBytes allocated " + bytesPerCall + " bytes per call, but the payload array is only "
+                + payloadArraySize + " bytes", bytesPerCall <= payloadArraySize);
+    }
+
+    @Test public void packedReadingCanBeUnpacked() {
+        final PrimitiveReading reading = new PrimitiveReading();
+        reading.z = 3;
+        reading.timestamp = 123456789L;
+        reading.valid = true;
+
+        final PrimitiveReading unpacked = Packager.unpack(null, Packager.packBytes(reading), PrimitiveReading.class);
+        assertEquals(3, unpacked.z, 0);
+        assertEquals(123456789L, unpacked.timestamp);
+        assertTrue(unpacked.valid);
+    }
+
+}
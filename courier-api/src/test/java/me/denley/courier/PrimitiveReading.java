@@ -0,0 +1,10 @@
+package me.denley.courier;
+
+/** A tagged {@link Deliverable} with only primitive fields, so it is written directly to bytes. */
+@Deliverable(tagged = true)
+public class PrimitiveReading {
+    public float x, y, z;
+    public long timestamp;
+    public int accuracy;
+    public boolean valid;
+}
@@ -2,7 +2,12 @@ package me.denley.courier.compiler;
 
 import java.io.IOException;
 import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import javax.annotation.processing.AbstractProcessor;
@@ -17,7 +22,9 @@ import javax.lang.model.type.TypeMirror;
 import javax.tools.Diagnostic;
 import javax.tools.JavaFileObject;
 
+import me.denley.courier.BitmapEncoding;
 import me.denley.courier.Deliverable;
+import me.denley.courier.Tag;
 
 public class DataMapProcessor extends AbstractProcessor {
 
@@ -25,21 +32,32 @@ public class DataMapProcessor extends AbstractProcessor {
 
     private static final String BITMAP = "android.graphics.Bitmap";
 
+    /** The largest tag that fits in a Wire key */
+    private static final int MAX_TAG = (1 << 28) - 1;
+
     private static final String INDENT = "    ";
     private static final String INDENT_2 = "        ";
     private static final String INDENT_3 = "            ";
 
     Set<String> targetClassNames = new LinkedHashSet<String>();
 
+    private final IndexWriter indexWriter = new IndexWriter("Courier$$PackagerIndex",
+            "Packager.PackagerIndex", "getDataPackager", "Packager.DataPackager", CLASS_SUFFIX, true);
+
 
     @Override public Set<String> getSupportedAnnotationTypes() {
         final Set<String> types = new LinkedHashSet<String>();
         types.add(Deliverable.class.getName());
+        types.add(BitmapEncoding.class.getName());
+        types.add(Tag.class.getName());
         return types;
     }
 
     @Override public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
         processDataMapElements(roundEnv);
+        checkBitmapEncodings(roundEnv);
+        checkTags(roundEnv);
+        indexWriter.write(processingEnv);
         return true;
     }
 
@@ -53,6 +71,35 @@ public class DataMapProcessor extends AbstractProcessor {
         }
     }
 
+    private void checkBitmapEncodings(RoundEnvironment roundEnv) {
+        for(Element element:roundEnv.getElementsAnnotatedWith(BitmapEncoding.class)) {
+            final BitmapEncoding encoding = element.getAnnotation(BitmapEncoding.class);
+            if(!element.asType().toString().equals(BITMAP)) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "@BitmapEncoding only applies to Bitmap fields", element);
+            } else if(element.getEnclosingElement().getAnnotation(Deliverable.class)==null) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "@BitmapEncoding only applies to fields in @Deliverable classes", element);
+            } else if(encoding.quality()<0 || encoding.quality()>100) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "@BitmapEncoding quality must be between 0 and 100", element);
+            } else if(encoding.maxDimension()<0) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "@BitmapEncoding maxDimension must not be negative", element);
+            }
+        }
+    }
+
+    private void checkTags(RoundEnvironment roundEnv) {
+        for(Element element:roundEnv.getElementsAnnotatedWith(Tag.class)) {
+            final Deliverable deliverable = element.getEnclosingElement().getAnnotation(Deliverable.class);
+            final int tag = element.getAnnotation(Tag.class).value();
+            if(deliverable==null || !deliverable.tagged()) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "@Tag only applies to fields in @Deliverable(tagged = true) classes", element);
+            } else if(!isPackedField(element)) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "@Tag does not apply to private, static, or final fields", element);
+            } else if(tag<1 || tag>MAX_TAG) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "@Tag value must be between 1 and " + MAX_TAG, element);
+            }
+        }
+    }
+
     private void processDataMapElementOrFail(Element element) {
         try {
             processDataMapElement(element);
@@ -63,7 +110,14 @@ public class DataMapProcessor extends AbstractProcessor {
 
     private void processDataMapElement(Element element) {
         checkForErrors(element);
+        if(!checkFieldNumbers((TypeElement) element)) {
+            return;
+        }
         writeClassForElement((TypeElement) element);
+
+        final TypeElement typeElement = (TypeElement) element;
+        final String packageName = getPackageName(typeElement);
+        indexWriter.add(packageName, typeElement, getClassOfElement(typeElement).substring(packageName.length() + 1));
     }
 
     private void checkForErrors(Element element) {
@@ -90,6 +144,11 @@ public class DataMapProcessor extends AbstractProcessor {
     }
 
     private String getParentClassName(TypeElement typeElement) {
+        final TypeElement parent = getParentElement(typeElement);
+        return parent==null ? null : getClassOfElement(parent);
+    }
+
+    private TypeElement getParentElement(TypeElement typeElement) {
         TypeMirror type;
         while (true) {
             type = typeElement.getSuperclass();
@@ -98,9 +157,88 @@ public class DataMapProcessor extends AbstractProcessor {
             }
             typeElement = (TypeElement) ((DeclaredType) type).asElement();
             if (targetClassNames.contains(typeElement.toString())) {
-                return getClassOfElement(typeElement);
+                return typeElement;
+            }
+        }
+    }
+
+    /** @return The fields of the class that are packed (not including those of its parent classes). */
+    private List<Element> getPackedFields(TypeElement element) {
+        final List<Element> fields = new ArrayList<Element>();
+        for(Element subElement:element.getEnclosedElements()) {
+            if(isPackedField(subElement)) {
+                fields.add(subElement);
+            }
+        }
+        return fields;
+    }
+
+    private boolean isPackedField(Element element) {
+        final Set<Modifier> modifiers = element.getModifiers();
+        return element.getKind()==ElementKind.FIELD
+                && !modifiers.contains(Modifier.PRIVATE)
+                && !modifiers.contains(Modifier.STATIC)
+                && !modifiers.contains(Modifier.FINAL);
+    }
+
+    private boolean isTagged(TypeElement element) {
+        return element.getAnnotation(Deliverable.class).tagged();
+    }
+
+    /**
+     * Fields are numbered in the order they are declared, starting with the fields of the topmost parent class.
+     * In a tagged class, fields with a {@link Tag} annotation use its value instead.
+     *
+     * The numbers identify fields in the Wire format, and are also used as DataMap keys in tagged classes.
+     *
+     * @return The numbers of the packed fields of the class (not including those of its parent classes).
+     */
+    private Map<Element, Integer> getFieldNumbers(TypeElement element) {
+        final Map<Element, Integer> numbers = new LinkedHashMap<Element, Integer>();
+        final boolean tagged = isTagged(element);
+
+        int number = 1;
+        for(TypeElement parent = getParentElement(element); parent!=null; parent = getParentElement(parent)) {
+            number += getPackedFields(parent).size();
+        }
+
+        for(Element field:getPackedFields(element)) {
+            final Tag tag = field.getAnnotation(Tag.class);
+            numbers.put(field, tagged && tag!=null ? tag.value() : number);
+            number++;
+        }
+        return numbers;
+    }
+
+    /**
+     * Reports an error for each field of the class whose number is already used by another field
+     * of the class or its parent classes.
+     *
+     * @return True if there were no errors.
+     */
+    private boolean checkFieldNumbers(TypeElement element) {
+        final Map<Integer, Element> used = new HashMap<Integer, Element>();
+        for(TypeElement parent = getParentElement(element); parent!=null; parent = getParentElement(parent)) {
+            for(Map.Entry<Element, Integer> entry:getFieldNumbers(parent).entrySet()) {
+                used.put(entry.getValue(), entry.getKey());
+            }
+        }
+
+        boolean valid = true;
+        for(Map.Entry<Element, Integer> entry:getFieldNumbers(element).entrySet()) {
+            final Element existing = used.put(entry.getValue(), entry.getKey());
+            if(existing!=null) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Tag " + entry.getValue()
+                        + " is already used by " + existing.getEnclosingElement().getSimpleName() + "." + existing.getSimpleName(), entry.getKey());
+                valid = false;
             }
         }
+        return valid;
+    }
+
+    /** @return The key used for the field in a DataMap. */
+    private String getKey(TypeElement element, Element field, Map<Element, Integer> fieldNumbers) {
+        return isTagged(element) ? String.valueOf(fieldNumbers.get(field)) : field.getSimpleName().toString();
     }
 
     private String getClassOfElement(TypeElement element) {
@@ -135,8 +273,10 @@ public class DataMapProcessor extends AbstractProcessor {
         builder.append("import android.content.Context;\n");
         builder.append("import android.graphics.Bitmap;\n");
         builder.append("import android.graphics.BitmapFactory;\n");
+        builder.append("import me.denley.courier.Wire;\n");
         builder.append("import java.io.InputStream;\n");
-        builder.append("import java.io.ByteArrayOutputStream;\n\n");
+        builder.append("import java.io.ByteArrayOutputStream;\n");
+        builder.append("import java.nio.ByteBuffer;\n\n");
 
         writeClassDef(builder, element, parentClass);
     }
@@ -148,7 +288,7 @@ public class DataMapProcessor extends AbstractProcessor {
                 .append("<T extends ").append(targetClassName).append("> ");
 
         if(parentClass==null) {
-            builder.append("implements DataPackager<T>");
+            builder.append("implements DataPackager<T>, Packager.WirePackager<T>");
         } else {
             builder.append("extends ").append(parentClass).append(CLASS_SUFFIX).append("<T>");
         }
@@ -159,8 +299,19 @@ public class DataMapProcessor extends AbstractProcessor {
         }
         writeUnpackInterfaceMethod(builder, targetClassName);
 
-        writePackImplMethod(builder, element, parentClass);
-        writeUnpackImplMethod(builder, element, parentClass);
+        final Map<Element, Integer> fieldNumbers = getFieldNumbers(element);
+
+        writePackImplMethod(builder, element, parentClass, fieldNumbers);
+        writeUnpackImplMethod(builder, element, parentClass, fieldNumbers);
+
+        if(isWireSupported(element)) {
+            writeWireSizeOfMethod(builder, parentClass, fieldNumbers);
+            writeWireWriteMethod(builder, parentClass, fieldNumbers);
+            writeWireReadMethod(builder, targetClassName);
+            writeWireReadFieldMethod(builder, parentClass, fieldNumbers);
+        } else {
+            writeUnsupportedWireMethods(builder, element, targetClassName);
+        }
 
         builder.append("}\n");
     }
@@ -181,7 +332,7 @@ public class DataMapProcessor extends AbstractProcessor {
         builder.append(INDENT).append("}\n\n");
     }
 
-    private void writePackImplMethod(StringBuilder builder, TypeElement element, String parentClass) {
+    private void writePackImplMethod(StringBuilder builder, TypeElement element, String parentClass, Map<Element, Integer> fieldNumbers) {
         if(parentClass!=null) {
             builder.append(INDENT).append("@Override\n");
         }
@@ -191,30 +342,31 @@ public class DataMapProcessor extends AbstractProcessor {
         }
 
         for(Element subElement:element.getEnclosedElements()) {
-            final Set<Modifier> modifiers = subElement.getModifiers();
             final String name = subElement.getSimpleName().toString();
 
-            if(subElement.getKind()==ElementKind.FIELD
-                    && !modifiers.contains(Modifier.PRIVATE)
-                    && !modifiers.contains(Modifier.STATIC)
-                    && !modifiers.contains(Modifier.FINAL)
-                    ) {
+            if(isPackedField(subElement)) {
+                final String key = getKey(element, subElement, fieldNumbers);
 
                 final DataMapElementType elementType = DataMapElementType.getElementType(subElement);
                 if(elementType==null) {
                     final String fieldType = subElement.asType().toString();
                     if(targetClassNames.contains(fieldType)) {
-                        builder.append(INDENT_2).append("map.putDataMap(\"").append(name).append("\", ")
+                        builder.append(INDENT_2).append("map.putDataMap(\"").append(key).append("\", ")
                                 .append("Packager.pack(target.").append(name).append("));\n");
                     } else if (fieldType.equals(BITMAP)) {
+                        final BitmapEncoding encoding = subElement.getAnnotation(BitmapEncoding.class);
+                        final String format = encoding==null ? "PNG" : encoding.format().name();
+                        final int quality = encoding==null ? 100 : encoding.quality();
+                        final int maxDimension = encoding==null ? 0 : encoding.maxDimension();
+
                         builder.append(INDENT_2).append("if(target.").append(name).append("!=null) {\n");
-                        builder.append(INDENT_3).append("final ByteArrayOutputStream ").append(name).append("ByteArrayOutputStream = new ByteArrayOutputStream();\n");
-                        builder.append(INDENT_3).append("target.").append(name).append(".compress(Bitmap.CompressFormat.PNG, 100, ").append(name).append("ByteArrayOutputStream);\n");
-                        builder.append(INDENT_3).append("final Asset ").append(name).append("Asset = Asset.createFromBytes(").append(name).append("ByteArrayOutputStream.toByteArray());\n");
-                        builder.append(INDENT_3).append("map.putAsset(\"").append(name).append("\", ").append(name).append("Asset);\n");
+                        builder.append(INDENT_3).append("map.putAsset(\"").append(key).append("\", Packager.packBitmap(target.").append(name)
+                                .append(", Bitmap.CompressFormat.").append(format)
+                                .append(", ").append(quality)
+                                .append(", ").append(maxDimension).append("));\n");
                         builder.append(INDENT_2).append("}\n");
                     } else if (fieldType.startsWith("java.util.ArrayList")) {
-                        builder.append(INDENT_2).append("map.putDataMapArrayList(\"").append(name).append("\", ")
+                        builder.append(INDENT_2).append("map.putDataMapArrayList(\"").append(key).append("\", ")
                                 .append("Packager.pack(target.").append(name).append("));\n");
                     } else {
                         // Bad field type, show an error linking to this specific element
@@ -222,7 +374,7 @@ public class DataMapProcessor extends AbstractProcessor {
                     }
                 } else {
                     builder.append(INDENT_2).append("map.").append(elementType.putMethod)
-                            .append("(\"").append(name).append("\", target.").append(name).append(");\n");
+                            .append("(\"").append(key).append("\", target.").append(name).append(");\n");
                 }
             }
         }
@@ -230,7 +382,7 @@ public class DataMapProcessor extends AbstractProcessor {
         builder.append(INDENT).append("}\n\n");
     }
 
-    private void writeUnpackImplMethod(StringBuilder builder, TypeElement element, String parentClass) {
+    private void writeUnpackImplMethod(StringBuilder builder, TypeElement element, String parentClass, Map<Element, Integer> fieldNumbers) {
         if(parentClass!=null) {
             builder.append(INDENT).append("@Override\n");
         }
@@ -240,14 +392,10 @@ public class DataMapProcessor extends AbstractProcessor {
         }
 
         for(Element subElement:element.getEnclosedElements()) {
-            final Set<Modifier> modifiers = subElement.getModifiers();
             final String name = subElement.getSimpleName().toString();
 
-            if(subElement.getKind()==ElementKind.FIELD
-                    && !modifiers.contains(Modifier.PRIVATE)
-                    && !modifiers.contains(Modifier.STATIC)
-                    && !modifiers.contains(Modifier.FINAL)
-                    ) {
+            if(isPackedField(subElement)) {
+                final String key = getKey(element, subElement, fieldNumbers);
 
                 final DataMapElementType elementType = DataMapElementType.getElementType(subElement);
                 if(elementType==null) {
@@ -256,14 +404,13 @@ public class DataMapProcessor extends AbstractProcessor {
                     if(targetClassNames.contains(fieldType)) {
                         builder.append(INDENT_2).append("target.").append(name).append(" = ");
                         builder.append("Packager.unpack(context, ")
-                                .append("map.getDataMap(\"").append(name)
+                                .append("map.getDataMap(\"").append(key)
                                 .append("\"), ")
                                 .append(fieldType).append(".class);\n");
                     } else if (fieldType.equals(BITMAP)) {
-                        builder.append(INDENT_2).append("final Asset ").append(name).append("Asset = map.getAsset(\"").append(name).append("\");\n");
+                        builder.append(INDENT_2).append("final Asset ").append(name).append("Asset = map.getAsset(\"").append(key).append("\");\n");
                         builder.append(INDENT_2).append("if(").append(name).append("Asset!=null && context!=null) {\n");
-                        builder.append(INDENT_3).append("final InputStream in = Courier.getAssetInputStream(context, ").append(name).append("Asset);\n");
-                        builder.append(INDENT_3).append("target.").append(name).append(" = BitmapFactory.decodeStream(in);\n");
+                        builder.append(INDENT_3).append("target.").append(name).append(" = Packager.unpackBitmap(context, ").append(name).append("Asset);\n");
                         builder.append(INDENT_2).append("}\n");
                     } else if (fieldType.startsWith("java.util.ArrayList")) {
                         if(fieldType.endsWith(">")) {
@@ -275,7 +422,7 @@ public class DataMapProcessor extends AbstractProcessor {
                             } else {
                                 builder.append(INDENT_2).append("target.").append(name).append(" = ");
                                 builder.append("Packager.unpack(context, ")
-                                        .append("map.getDataMapArrayList(\"").append(name)
+                                        .append("map.getDataMapArrayList(\"").append(key)
                                         .append("\"), ")
                                         .append(itemType).append(".class);\n");
                             }
@@ -290,7 +437,7 @@ public class DataMapProcessor extends AbstractProcessor {
                 } else {
                     builder.append(INDENT_2).append("target.").append(name).append(" = ");
                     builder.append("map.").append(elementType.getMethod)
-                            .append("(\"").append(name).append("\");\n");
+                            .append("(\"").append(key).append("\");\n");
                 }
             }
         }
@@ -300,4 +447,199 @@ public class DataMapProcessor extends AbstractProcessor {
 
 
 
+
+    /**
+     * @return True if the class and its parent classes are tagged, and every packed field can be written in the
+     * Wire format. Otherwise, the class is written as a DataMap. Untagged classes are always written as a DataMap
+     * keyed by field name, as their field numbers change whenever a field is added or moved.
+     */
+    private boolean isWireSupported(TypeElement element) {
+        if(!isTagged(element)) {
+            return false;
+        }
+
+        for(Element field:getPackedFields(element)) {
+            if(getWireType(field)==-1) {
+                return false;
+            }
+        }
+
+        final TypeElement parent = getParentElement(element);
+        return parent==null || isWireSupported(parent);
+    }
+
+    /** @return The wire type of the field, or -1 if it can't be written in the Wire format. */
+    private int getWireType(Element field) {
+        final WireFieldType fieldType = WireFieldType.getFieldType(field);
+        if(fieldType!=null) {
+            return fieldType.wireType;
+        }
+
+        final String type = field.asType().toString();
+        if(targetClassNames.contains(type) || targetClassNames.contains(getArrayListItemType(type))) {
+            return WireFieldType.NESTED;
+        }
+        return -1;
+    }
+
+    /** @return The item type of an ArrayList type, or null if the type is not a parameterized ArrayList. */
+    private String getArrayListItemType(String type) {
+        if(type.startsWith("java.util.ArrayList<") && type.endsWith(">")) {
+            return type.substring(20, type.length() - 1);
+        }
+        return null;
+    }
+
+    private void writeWireSizeOfMethod(StringBuilder builder, String parentClass, Map<Element, Integer> fieldNumbers) {
+        if(parentClass!=null) {
+            builder.append(INDENT).append("@Override\n");
+        }
+        builder.append(INDENT).append("public int sizeOf(T target) {\n");
+        if(parentClass==null) {
+            builder.append(INDENT_2).append("int size = 0;\n");
+        } else {
+            builder.append(INDENT_2).append("int size = super.sizeOf(target);\n");
+            builder.append(INDENT_2).append("if(size < 0) {\n");
+            builder.append(INDENT_3).append("return -1;\n");
+            builder.append(INDENT_2).append("}\n");
+        }
+
+        for(Map.Entry<Element, Integer> entry:fieldNumbers.entrySet()) {
+            final Element field = entry.getKey();
+            final int number = entry.getValue();
+            final String name = field.getSimpleName().toString();
+            final WireFieldType fieldType = WireFieldType.getFieldType(field);
+            if(fieldType!=null) {
+                builder.append(INDENT_2).append("size += Wire.sizeOf").append(fieldType.methodSuffix)
+                        .append("(").append(number).append(", target.").append(name).append(");\n");
+            } else {
+                final String method = getArrayListItemType(field.asType().toString())==null ? "sizeOfDeliverable" : "sizeOfDeliverableList";
+                builder.append(INDENT_2).append("final int ").append(name).append("Size = Wire.").append(method)
+                        .append("(").append(number).append(", target.").append(name).append(");\n");
+                builder.append(INDENT_2).append("if(").append(name).append("Size < 0) {\n");
+                builder.append(INDENT_3).append("return -1;\n");
+                builder.append(INDENT_2).append("}\n");
+                builder.append(INDENT_2).append("size += ").append(name).append("Size;\n");
+            }
+        }
+
+        builder.append(INDENT_2).append("return size;\n");
+        builder.append(INDENT).append("}\n\n");
+    }
+
+    private void writeWireWriteMethod(StringBuilder builder, String parentClass, Map<Element, Integer> fieldNumbers) {
+        if(parentClass!=null) {
+            builder.append(INDENT).append("@Override\n");
+        }
+        builder.append(INDENT).append("public void write(T target, ByteBuffer buffer) {\n");
+        if(parentClass!=null) {
+            builder.append(INDENT_2).append("super.write(target, buffer);\n");
+        }
+
+        for(Map.Entry<Element, Integer> entry:fieldNumbers.entrySet()) {
+            final Element field = entry.getKey();
+            final int number = entry.getValue();
+            final WireFieldType fieldType = WireFieldType.getFieldType(field);
+            final String method;
+            if(fieldType!=null) {
+                method = "write" + fieldType.methodSuffix;
+            } else {
+                method = getArrayListItemType(field.asType().toString())==null ? "writeDeliverable" : "writeDeliverableList";
+            }
+            builder.append(INDENT_2).append("Wire.").append(method).append("(buffer, ").append(number)
+                    .append(", target.").append(field.getSimpleName()).append(");\n");
+        }
+
+        builder.append(INDENT).append("}\n\n");
+    }
+
+    private void writeWireReadMethod(StringBuilder builder, String targetClassName) {
+        builder.append(INDENT).append("public T read(Context context, ByteBuffer buffer) {\n");
+        builder.append(INDENT_2).append("final T target = (T) new ").append(targetClassName).append("();\n");
+        builder.append(INDENT_2).append("while(buffer.hasRemaining()) {\n");
+        builder.append(INDENT_3).append("final int key = Wire.readKey(buffer);\n");
+        builder.append(INDENT_3).append("if(!readField(context, buffer, key, target)) {\n");
+        builder.append(INDENT_3).append(INDENT).append("Wire.skip(buffer, key);\n");
+        builder.append(INDENT_3).append("}\n");
+        builder.append(INDENT_2).append("}\n");
+        builder.append(INDENT_2).append("return target;\n");
+        builder.append(INDENT).append("}\n\n");
+    }
+
+    private void writeWireReadFieldMethod(StringBuilder builder, String parentClass, Map<Element, Integer> fieldNumbers) {
+        if(parentClass!=null) {
+            builder.append(INDENT).append("@Override\n");
+        }
+        builder.append(INDENT).append("protected boolean readField(Context context, ByteBuffer buffer, int key, T target) {\n");
+        builder.append(INDENT_2).append("switch (key) {\n");
+
+        for(Map.Entry<Element, Integer> entry:fieldNumbers.entrySet()) {
+            final Element field = entry.getKey();
+            final int number = entry.getValue();
+            final String name = field.getSimpleName().toString();
+            final WireFieldType fieldType = WireFieldType.getFieldType(field);
+
+            // The key includes the wire type, so a field that has changed type is skipped
+            builder.append(INDENT_3).append("case ").append(WireFieldType.key(number, getWireType(field))).append(":\n");
+            builder.append(INDENT_3).append(INDENT).append("target.").append(name).append(" = ");
+            if(fieldType!=null) {
+                builder.append("Wire.read").append(fieldType.methodSuffix).append("(buffer);\n");
+            } else {
+                final String type = field.asType().toString();
+                final String itemType = getArrayListItemType(type);
+                if(itemType==null) {
+                    builder.append("Wire.readDeliverable(context, buffer, ").append(type).append(".class);\n");
+                } else {
+                    builder.append("Wire.readDeliverableList(context, buffer, ").append(itemType).append(".class);\n");
+                }
+            }
+            builder.append(INDENT_3).append(INDENT).append("return true;\n");
+        }
+
+        builder.append(INDENT_3).append("default:\n");
+        if(parentClass==null) {
+            builder.append(INDENT_3).append(INDENT).append("return false;\n");
+        } else {
+            builder.append(INDENT_3).append(INDENT).append("return super.readField(context, buffer, key, target);\n");
+        }
+        builder.append(INDENT_2).append("}\n");
+        builder.append(INDENT).append("}\n\n");
+    }
+
+    /**
+     * Written for classes that can't use the Wire format, including subclasses of classes that can. A subclass
+     * may still receive a payload written in the Wire format by its parent class, so it reads the parent's fields
+     * (and leaves its own unset, as it would when reading the parent's DataMap).
+     */
+    private void writeUnsupportedWireMethods(StringBuilder builder, TypeElement element, String targetClassName) {
+        final String qualifiedName = element.getQualifiedName().toString();
+
+        builder.append(INDENT).append("public int sizeOf(T target) {\n");
+        builder.append(INDENT_2).append("return -1;\n");
+        builder.append(INDENT).append("}\n\n");
+
+        builder.append(INDENT).append("public void write(T target, ByteBuffer buffer) {\n");
+        builder.append(INDENT_2).append("throw new IllegalArgumentException(\"Unable to write ").append(qualifiedName)
+                .append(" in the Wire format\");\n");
+        builder.append(INDENT).append("}\n\n");
+
+        if(hasWireSupportedParent(element)) {
+            writeWireReadMethod(builder, targetClassName);
+        } else {
+            builder.append(INDENT).append("public T read(Context context, ByteBuffer buffer) {\n");
+            builder.append(INDENT_2).append("throw new IllegalArgumentException(\"Unable to read ").append(qualifiedName)
+                    .append(" from the Wire format\");\n");
+            builder.append(INDENT).append("}\n\n");
+        }
+    }
+
+    private boolean hasWireSupportedParent(TypeElement element) {
+        for(TypeElement parent = getParentElement(element); parent!=null; parent = getParentElement(parent)) {
+            if(isWireSupported(parent)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
 }
@@ -0,0 +1,135 @@
+package me.denley.courier.compiler;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * Writes an index class into each package, mapping the annotated classes in that package to their generated classes.
+ * This lets the runtime find generated classes without a reflective lookup for every class (and every superclass).
+ *
+ * Each package's index is written once per compilation. Classes found in a later round, in a package whose index
+ * has already been written, are left out of the index (the runtime falls back to finding them by name).
+ */
+class IndexWriter {
+
+    private final String indexClassName;
+    private final String interfaceName;
+    private final String methodName;
+    private final String returnType;
+    private final String generatedClassSuffix;
+    private final boolean writeNameLookup;
+
+    private final Map<String, Map<TypeElement, String>> pendingPackages = new LinkedHashMap<String, Map<TypeElement, String>>();
+    private final Set<String> writtenPackages = new HashSet<String>();
+
+    /**
+     * @param indexClassName The simple name of the index class.
+     * @param interfaceName The interface that the index implements, relative to the me.denley.courier package.
+     * @param methodName The name of the interface's lookup method.
+     * @param returnType The return type of the lookup method, relative to the me.denley.courier package.
+     * @param generatedClassSuffix The suffix of the generated classes.
+     * @param writeNameLookup Whether to also write an overload of the lookup method that takes the target's class name.
+     */
+    IndexWriter(String indexClassName, String interfaceName, String methodName, String returnType,
+                String generatedClassSuffix, boolean writeNameLookup) {
+        this.indexClassName = indexClassName;
+        this.interfaceName = interfaceName;
+        this.methodName = methodName;
+        this.returnType = returnType;
+        this.generatedClassSuffix = generatedClassSuffix;
+        this.writeNameLookup = writeNameLookup;
+    }
+
+    /**
+     * Adds a target class to its package's index.
+     *
+     * @param packageName The package of the target class.
+     * @param element The target class.
+     * @param generatedClassName The simple name of the target class, with nested class names separated by '$'.
+     */
+    void add(String packageName, TypeElement element, String generatedClassName) {
+        if(writtenPackages.contains(packageName)) {
+            return;
+        }
+
+        Map<TypeElement, String> targets = pendingPackages.get(packageName);
+        if(targets==null) {
+            targets = new LinkedHashMap<TypeElement, String>();
+            pendingPackages.put(packageName, targets);
+        }
+        targets.put(element, generatedClassName + generatedClassSuffix);
+    }
+
+    /** Writes the indexes of all packages with classes added since the last call. */
+    void write(ProcessingEnvironment processingEnv) {
+        for(Map.Entry<String, Map<TypeElement, String>> entry : pendingPackages.entrySet()) {
+            final String packageName = entry.getKey();
+            final Map<TypeElement, String> targets = entry.getValue();
+            writtenPackages.add(packageName);
+
+            final Element[] originatingElements = targets.keySet().toArray(new Element[targets.size()]);
+            final String qualifiedName = packageName.isEmpty() ? indexClassName : packageName + "." + indexClassName;
+            try {
+                JavaFileObject jfo = processingEnv.getFiler().createSourceFile(qualifiedName, originatingElements);
+                Writer writer = jfo.openWriter();
+                writer.write(writeJava(processingEnv, packageName, targets));
+                writer.flush();
+                writer.close();
+            } catch (IOException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, e.getMessage(), originatingElements[0]);
+            }
+        }
+        pendingPackages.clear();
+    }
+
+    private String writeJava(ProcessingEnvironment processingEnv, String packageName, Map<TypeElement, String> targets) {
+        final StringBuilder builder = new StringBuilder();
+        if(!packageName.isEmpty()) {
+            builder.append("package ").append(packageName).append(";\n\n");
+        }
+        builder.append("import me.denley.courier.Courier;\n");
+        builder.append("import me.denley.courier.Packager;\n\n");
+
+        builder.append("public final class ").append(indexClassName)
+                .append(" implements ").append(interfaceName).append(" {\n\n");
+
+        builder.append(PostalArea.INDENT).append("@Override public ").append(returnType).append(" ")
+                .append(methodName).append("(Class targetClass) {\n");
+        for(Map.Entry<TypeElement, String> target : targets.entrySet()) {
+            builder.append(PostalArea.INDENT_2).append("if(targetClass == ")
+                    .append(target.getKey().getQualifiedName()).append(".class) {\n");
+            builder.append(PostalArea.INDENT_3).append("return new ").append(target.getValue()).append("();\n");
+            builder.append(PostalArea.INDENT_2).append("}\n");
+        }
+        builder.append(PostalArea.INDENT_2).append("return null;\n");
+        builder.append(PostalArea.INDENT).append("}\n\n");
+
+        if(writeNameLookup) {
+            // Lets the runtime find a generated class from a name it was sent, without loading the named class
+            builder.append(PostalArea.INDENT).append("@Override public ").append(returnType).append(" ")
+                    .append(methodName).append("(String className) {\n");
+            for(Map.Entry<TypeElement, String> target : targets.entrySet()) {
+                builder.append(PostalArea.INDENT_2).append("if(\"")
+                        .append(processingEnv.getElementUtils().getBinaryName(target.getKey())).append("\".equals(className)) {\n");
+                builder.append(PostalArea.INDENT_3).append("return new ").append(target.getValue()).append("();\n");
+                builder.append(PostalArea.INDENT_2).append("}\n");
+            }
+            builder.append(PostalArea.INDENT_2).append("return null;\n");
+            builder.append(PostalArea.INDENT).append("}\n\n");
+        }
+
+        builder.append("}\n");
+        return builder.toString();
+    }
+
+}
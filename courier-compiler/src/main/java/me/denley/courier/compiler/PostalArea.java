@@ -1,7 +1,10 @@
 package me.denley.courier.compiler;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -65,26 +68,24 @@ class PostalArea {
 
     private void writeImports(StringBuilder builder) {
         builder.append("import com.google.android.gms.common.api.GoogleApiClient;\n");
-        builder.append("import com.google.android.gms.wearable.DataApi;\n");
-        builder.append("import com.google.android.gms.wearable.DataEvent;\n");
-        builder.append("import com.google.android.gms.wearable.DataEventBuffer;\n");
         builder.append("import com.google.android.gms.wearable.DataItem;\n");
-        builder.append("import com.google.android.gms.wearable.DataItemBuffer;\n");
         builder.append("import com.google.android.gms.wearable.MessageApi;\n");
         builder.append("import com.google.android.gms.wearable.MessageEvent;\n");
         builder.append("import com.google.android.gms.wearable.Node;\n");
         builder.append("import com.google.android.gms.wearable.NodeApi;\n");
         builder.append("\n");
+        builder.append("import java.util.Collections;\n");
         builder.append("import java.util.LinkedHashMap;\n");
         builder.append("import java.util.Map;\n");
         builder.append("import java.util.List;\n");
+        builder.append("import java.util.concurrent.CopyOnWriteArrayList;\n");
         builder.append("\n");
+        builder.append("import me.denley.courier.Backpressure;\n");
         builder.append("import me.denley.courier.Courier;\n");
         builder.append("import me.denley.courier.Packager;\n");
+        builder.append("import me.denley.courier.PathPattern;\n");
         builder.append("import me.denley.courier.WearableApis;\n");
         builder.append("\n");
-        builder.append("import android.os.Handler;\n");
-        builder.append("import android.os.Looper;\n");
         builder.append("import android.content.Context;\n");
         builder.append("\n");
         builder.append("import static me.denley.courier.WearableApis.NODE;\n");
@@ -104,42 +105,101 @@ class PostalArea {
         }
 
         builder.append(" {\n");
-        builder.append(INDENT).append("private Context context;\n");
-        builder.append(INDENT).append("private Handler handler = new Handler(Looper.getMainLooper());\n\n");
+        builder.append(INDENT).append("private Context context;\n\n");
 
-        writeListenerMaps(builder);
+        writePathPatterns(builder, messageRoutes, "MESSAGE_PATTERN_");
+        writePathPatterns(builder, dataRoutes, "DATA_PATTERN_");
+        writeListeners(builder);
         writeStartReceivingMethod(builder);
         writeStopReceivingMethod(builder);
         if(!localNodeRecipients.isEmpty()) {
             writeInitLocalNodesMethod(builder);
         }
         if(!messageRoutes.isEmpty()) {
-            writeInitMessageListenerMethod(builder);
             writeDeliverMessageMethod(builder);
+            writeDeliverStreamMethod(builder);
         }
-        if(!remoteNodeRecipients.isEmpty() || !dataRoutes.isEmpty()) {
+        if(!remoteNodeRecipients.isEmpty()) {
             writeInitNodeListenerMethod(builder);
             writeDeliverRemoteNodesMethod(builder);
         }
         if(!dataRoutes.isEmpty()) {
-            writeInitDataListenerMethod(builder);
             writeDeliverDataMethod(builder);
             writeInitDataMethod(builder);
         }
         builder.append("}\n");
     }
 
-    private void writeListenerMaps(StringBuilder builder) {
+    private void writePathPatterns(StringBuilder builder, Map<String, Route> routes, String namePrefix) {
+        int count = 0;
+        for(Route route:routes.values()) {
+            if(route.isPattern) {
+                route.patternName = namePrefix + count++;
+                builder.append(INDENT).append("private static final PathPattern ").append(route.patternName)
+                        .append(" = new PathPattern(\"").append(route.path).append("\");\n");
+            }
+        }
+        if(count > 0) {
+            builder.append("\n");
+        }
+    }
+
+    private void writePaths(StringBuilder builder, Map<String, Route> routes, String name) {
+        builder.append(INDENT).append("private static final String[] ").append(name).append(" = {");
+        boolean first = true;
+        for(String path:routes.keySet()) {
+            if(!first) {
+                builder.append(", ");
+            }
+            first = false;
+            builder.append("\"").append(path).append("\"");
+        }
+        builder.append("};\n");
+    }
+
+    private void writeListeners(StringBuilder builder) {
         if(!messageRoutes.isEmpty()) {
-            builder.append(INDENT).append("private Map<T, MessageApi.MessageListener> messageListeners = new LinkedHashMap<T, MessageApi.MessageListener>();\n");
+            writePaths(builder, messageRoutes, "MESSAGE_PATHS");
         }
         if(!dataRoutes.isEmpty()) {
-            builder.append(INDENT).append("private Map<T, DataApi.DataListener> dataListeners = new LinkedHashMap<T, DataApi.DataListener>();\n");
+            writePaths(builder, dataRoutes, "DATA_PATHS");
         }
-        if(!remoteNodeRecipients.isEmpty() || !dataRoutes.isEmpty()) {
-            builder.append(INDENT).append("private Map<T, NodeApi.NodeListener> nodeListeners = new LinkedHashMap<T, NodeApi.NodeListener>();\n");
+        if(!messageRoutes.isEmpty() || !dataRoutes.isEmpty()) {
+            builder.append("\n");
+            // A single set of listeners is shared by all targets, so that each payload is only unpacked once
+            builder.append(INDENT).append("private final CopyOnWriteArrayList<T> targets = new CopyOnWriteArrayList<T>();\n\n");
+        }
+        if(!messageRoutes.isEmpty()) {
+            builder.append(INDENT).append("private final MessageApi.MessageListener messageListener = new MessageApi.MessageListener() {\n");
+            builder.append(INDENT_2).append("@Override public void onMessageReceived(MessageEvent messageEvent) {\n");
+            builder.append(INDENT_3).append("deliverMessage(targets, messageEvent);\n");
+            builder.append(INDENT_2).append("}\n");
+            builder.append(INDENT).append("};\n\n");
+
+            builder.append(INDENT).append("private final WearableApis.StreamListener streamListener = new WearableApis.StreamListener() {\n");
+            builder.append(INDENT_2).append("@Override public void onStreamReceived(String path, String node, Object payload) {\n");
+            builder.append(INDENT_3).append("deliverStream(targets, path, node, payload);\n");
+            builder.append(INDENT_2).append("}\n");
+            builder.append(INDENT).append("};\n\n");
+        }
+        if(!dataRoutes.isEmpty()) {
+            builder.append(INDENT).append("private final WearableApis.DataItemListener dataListener = new WearableApis.DataItemListener() {\n");
+            builder.append(INDENT_2).append("@Override public void onDataItemChanged(DataItem item) {\n");
+            builder.append(INDENT_3).append("deliverData(targets, item);\n");
+            builder.append(INDENT_2).append("}\n");
+            builder.append(INDENT).append("};\n\n");
+
+            builder.append(INDENT).append("private final NodeApi.NodeListener peerListener = new NodeApi.NodeListener() {\n");
+            builder.append(INDENT_2).append("@Override public void onPeerConnected(Node node) {\n");
+            builder.append(INDENT_3).append("initializeData(targets);\n");
+            builder.append(INDENT_2).append("}\n");
+            builder.append(INDENT_2).append("@Override public void onPeerDisconnected(Node node) {\n");
+            builder.append(INDENT_2).append("}\n");
+            builder.append(INDENT).append("};\n\n");
+        }
+        if(!remoteNodeRecipients.isEmpty()) {
+            builder.append(INDENT).append("private Map<T, NodeApi.NodeListener> nodeListeners = new LinkedHashMap<T, NodeApi.NodeListener>();\n\n");
         }
-        builder.append("\n");
     }
 
     private void writeStartReceivingMethod(StringBuilder builder) {
@@ -152,14 +212,26 @@ class PostalArea {
         if(!localNodeRecipients.isEmpty()) {
             builder.append(INDENT_2).append("initLocalNodes(target);\n");
         }
-        if(!remoteNodeRecipients.isEmpty() || !dataRoutes.isEmpty()) {
+        if(!remoteNodeRecipients.isEmpty()) {
             builder.append(INDENT_2).append("initNodeListener(target);\n");
         }
-        if(!messageRoutes.isEmpty()) {
-            builder.append(INDENT_2).append("initMessageListener(target);\n");
+        if(!messageRoutes.isEmpty() || !dataRoutes.isEmpty()) {
+            builder.append(INDENT_2).append("synchronized (targets) {\n");
+            builder.append(INDENT_3).append("if(targets.isEmpty()) {\n");
+            if(!messageRoutes.isEmpty()) {
+                builder.append(INDENT_4).append("WearableApis.addMessageListener(context, MESSAGE_PATHS, messageListener);\n");
+                builder.append(INDENT_4).append("WearableApis.addStreamListener(context, streamListener);\n");
+            }
+            if(!dataRoutes.isEmpty()) {
+                builder.append(INDENT_4).append("WearableApis.addDataListener(context, DATA_PATHS, dataListener);\n");
+                builder.append(INDENT_4).append("WearableApis.addNodeListener(context, peerListener);\n");
+            }
+            builder.append(INDENT_3).append("}\n");
+            builder.append(INDENT_3).append("targets.addIfAbsent(target);\n");
+            builder.append(INDENT_2).append("}\n");
         }
         if(!dataRoutes.isEmpty()) {
-            builder.append(INDENT_2).append("initDataListener(target);\n");
+            builder.append(INDENT_2).append("initializeData(Collections.singletonList(target));\n");
         }
         builder.append(INDENT).append("}\n\n");
     }
@@ -169,29 +241,27 @@ class PostalArea {
         if(parentClass!=null) {
             builder.append(INDENT_2).append("super.stopReceiving(target);\n");
         }
-        builder.append(INDENT_2).append("GoogleApiClient apiClient = WearableApis.googleApiClient;\n");
-        builder.append(INDENT_2).append("if(apiClient==null) {\n");
-        builder.append(INDENT_3).append("return;\n");
-        builder.append(INDENT_2).append("}\n\n");
-
-        if(!messageRoutes.isEmpty()) {
-            builder.append(INDENT_2).append("MessageApi.MessageListener ml = messageListeners.remove(target);\n");
-            builder.append(INDENT_2).append("if(ml!=null) {\n");
-            builder.append(INDENT_3).append("WearableApis.getMessageApi().removeListener(apiClient, ml);\n");
-            builder.append(INDENT_2).append("}\n\n");
-        }
-        if(!dataRoutes.isEmpty()) {
-            builder.append(INDENT_2).append("DataApi.DataListener dl = dataListeners.remove(target);\n");
-            builder.append(INDENT_2).append("if(dl!=null) {\n");
-            builder.append(INDENT_3).append("WearableApis.getDataApi().removeListener(apiClient, dl);\n");
-            builder.append(INDENT_2).append("}\n\n");
-        }
-        if(!remoteNodeRecipients.isEmpty() || !dataRoutes.isEmpty()) {
+        if(!remoteNodeRecipients.isEmpty()) {
             builder.append(INDENT_2).append("NodeApi.NodeListener nl = nodeListeners.remove(target);\n");
             builder.append(INDENT_2).append("if(nl!=null) {\n");
-            builder.append(INDENT_3).append("WearableApis.getNodeApi().removeListener(apiClient, nl);\n");
+            builder.append(INDENT_3).append("WearableApis.removeNodeListener(nl);\n");
             builder.append(INDENT_2).append("}\n\n");
         }
+        if(!messageRoutes.isEmpty() || !dataRoutes.isEmpty()) {
+            // The shared listeners are removed along with the last target
+            builder.append(INDENT_2).append("synchronized (targets) {\n");
+            builder.append(INDENT_3).append("if(targets.remove(target) && targets.isEmpty()) {\n");
+            if(!messageRoutes.isEmpty()) {
+                builder.append(INDENT_4).append("WearableApis.removeMessageListener(messageListener);\n");
+                builder.append(INDENT_4).append("WearableApis.removeStreamListener(streamListener);\n");
+            }
+            if(!dataRoutes.isEmpty()) {
+                builder.append(INDENT_4).append("WearableApis.removeDataListener(dataListener);\n");
+                builder.append(INDENT_4).append("WearableApis.removeNodeListener(peerListener);\n");
+            }
+            builder.append(INDENT_3).append("}\n");
+            builder.append(INDENT_2).append("}\n");
+        }
         builder.append(INDENT).append("}\n\n");
     }
 
@@ -203,24 +273,14 @@ class PostalArea {
 
 
         for(Recipient localNodeRecipient:localNodeRecipients) {
-            if(localNodeRecipient.backgroundThread) {
+            if(localNodeRecipient.isCallingThread()) {
                 builder.append(INDENT_4);
                 localNodeRecipient.writeLocalNodeBindingTo(builder);
             }
         }
 
-        if(Recipient.hasMainThreadReceipient(localNodeRecipients)) {
-            builder.append(INDENT_4).append("handler.post(new Runnable() {\n");
-            builder.append(INDENT_5).append("public void run() {\n");
-            for (Recipient localNodeRecipient : localNodeRecipients) {
-                if (!localNodeRecipient.backgroundThread) {
-                    builder.append(INDENT_6);
-                    localNodeRecipient.writeLocalNodeBindingTo(builder);
-                }
-            }
-            builder.append(INDENT_5).append("}\n");
-            builder.append(INDENT_4).append("});\n");
-        }
+        Recipient.writeMainThreadBindingsTo(builder, INDENT_4, localNodeRecipients, "null",
+                getSourceNames(localNodeRecipients, "localNode"), null);
 
 
         builder.append(INDENT_3).append("}\n");
@@ -228,31 +288,21 @@ class PostalArea {
         builder.append(INDENT).append("}\n\n");
     }
 
-    private void writeInitMessageListenerMethod(StringBuilder builder) {
-        builder.append(INDENT).append("private void initMessageListener(final T target) {\n");
-        builder.append(INDENT_2).append("final MessageApi.MessageListener ml = new MessageApi.MessageListener() {\n");
-        builder.append(INDENT_3).append("@Override public void onMessageReceived(MessageEvent messageEvent) {\n");
-        builder.append(INDENT_4).append("deliverMessage(target, messageEvent);\n");
-        builder.append(INDENT_3).append("}\n");
-        builder.append(INDENT_2).append("};\n\n");
-
-        builder.append(INDENT_2).append("messageListeners.put(target, ml);\n");
-        builder.append(INDENT_2).append("WearableApis.makeWearableApiCall(context, MESSAGE, new WearableApis.WearableApiRunnable() {\n");
-        builder.append(INDENT_3).append("public void run(GoogleApiClient apiClient){\n");
-        builder.append(INDENT_4).append("WearableApis.getMessageApi().addListener(apiClient, ml);\n");
-        builder.append(INDENT_3).append("}\n");
-        builder.append(INDENT_2).append("});\n");
-
-        builder.append(INDENT).append("}\n\n");
-    }
-
     private void writeDeliverMessageMethod(StringBuilder builder) {
-        builder.append(INDENT).append("private void deliverMessage(final T target, final MessageEvent message) {\n");
+        builder.append(INDENT).append("private void deliverMessage(final List<T> targets, final MessageEvent message) {\n");
+        writeNoTargetsCheck(builder);
         builder.append(INDENT_2).append("final String path = message.getPath();\n");
-        builder.append(INDENT_2).append("final byte[] data = message.getData();\n");
         builder.append(INDENT_2).append("final String node = message.getSourceNodeId();\n\n");
-        writeDataBindings(builder, messageRoutes, "data");
-        builder.append("\n");
+        builder.append(INDENT_2).append("for(final byte[] data:Packager.unbatch(message.getData())) {\n");
+        writeDataBindings(builder, messageRoutes, "WearableApis.unpack(context, path, data", "WearableApis.unpack(context, path, data", INDENT_3);
+        builder.append(INDENT_2).append("}\n");
+        builder.append(INDENT).append("}\n\n");
+    }
+
+    private void writeDeliverStreamMethod(StringBuilder builder) {
+        builder.append(INDENT).append("private void deliverStream(final List<T> targets, final String path, final String node, final Object payload) {\n");
+        writeNoTargetsCheck(builder);
+        writeDataBindings(builder, messageRoutes, "Packager.cast(payload", "Packager.copy(context, payload", INDENT_2);
         builder.append(INDENT).append("}\n\n");
     }
 
@@ -261,21 +311,13 @@ class PostalArea {
         builder.append(INDENT_2).append("final NodeApi.NodeListener nl = new NodeApi.NodeListener() {\n");
         builder.append(INDENT_3).append("@Override public void onPeerConnected(Node node) {\n");
         builder.append(INDENT_4).append("deliverRemoteNodes(target);\n");
-        if(!dataRoutes.isEmpty()) {
-            builder.append(INDENT_4).append("initializeData(target);\n");
-        }
         builder.append(INDENT_3).append("}\n");
         builder.append(INDENT_3).append("@Override public void onPeerDisconnected(Node node) {\n");
         builder.append(INDENT_4).append("deliverRemoteNodes(target);\n");
         builder.append(INDENT_3).append("}\n");
         builder.append(INDENT_2).append("};\n");
         builder.append(INDENT_2).append("nodeListeners.put(target, nl);\n");
-
-        builder.append(INDENT_2).append("WearableApis.makeWearableApiCall(context, NODE, new WearableApis.WearableApiRunnable() {\n");
-        builder.append(INDENT_3).append("public void run(GoogleApiClient apiClient){\n");
-        builder.append(INDENT_4).append("WearableApis.getNodeApi().addListener(apiClient, nl);\n");
-        builder.append(INDENT_3).append("}\n");
-        builder.append(INDENT_2).append("});\n");
+        builder.append(INDENT_2).append("WearableApis.addNodeListener(context, nl);\n");
 
         if(!remoteNodeRecipients.isEmpty()) {
             builder.append(INDENT_2).append("deliverRemoteNodes(target);\n");
@@ -289,27 +331,17 @@ class PostalArea {
         builder.append(INDENT_2).append("WearableApis.makeWearableApiCall(context, NODE, new WearableApis.WearableApiRunnable() {\n");
         builder.append(INDENT_3).append("public void run(GoogleApiClient apiClient){\n");
 
-        builder.append(INDENT_4).append("final List<Node> nodes = WearableApis.getNodeApi().getConnectedNodes(apiClient).await().getNodes();\n\n");
+        builder.append(INDENT_4).append("final List<Node> nodes = WearableApis.getConnectedNodes(apiClient);\n\n");
 
         for(Recipient localNodeRecipient:remoteNodeRecipients) {
-            if(localNodeRecipient.backgroundThread) {
+            if(localNodeRecipient.isCallingThread()) {
                 builder.append(INDENT_4);
                 localNodeRecipient.writeRemoteNodeBindingTo(builder);
             }
         }
 
-        if(Recipient.hasMainThreadReceipient(remoteNodeRecipients)) {
-            builder.append(INDENT_4).append("handler.post(new Runnable() {\n");
-            builder.append(INDENT_5).append("public void run() {\n");
-            for (Recipient localNodeRecipient : remoteNodeRecipients) {
-                if (!localNodeRecipient.backgroundThread) {
-                    builder.append(INDENT_6);
-                    localNodeRecipient.writeRemoteNodeBindingTo(builder);
-                }
-            }
-            builder.append(INDENT_5).append("}\n");
-            builder.append(INDENT_4).append("});\n");
-        }
+        Recipient.writeMainThreadBindingsTo(builder, INDENT_4, remoteNodeRecipients, "null",
+                getSourceNames(remoteNodeRecipients, "nodes"), null);
 
         builder.append(INDENT_3).append("}\n");
         builder.append(INDENT_2).append("});\n");
@@ -317,63 +349,90 @@ class PostalArea {
         builder.append(INDENT).append("}\n\n");
     }
 
-    private void writeInitDataListenerMethod(StringBuilder builder) {
-        builder.append(INDENT).append("private void initDataListener(final T target) {\n");
-        builder.append(INDENT_2).append("final DataApi.DataListener dl = new DataApi.DataListener(){\n");
-        builder.append(INDENT_3).append("@Override public void onDataChanged(DataEventBuffer dataEvents) {\n");
-        builder.append(INDENT_4).append("for(DataEvent event:dataEvents) {\n");
-        builder.append(INDENT_5).append("deliverData(target, event.getDataItem());\n");
-        builder.append(INDENT_4).append("}\n");
-        builder.append(INDENT_3).append("}\n");
-        builder.append(INDENT_2).append("};\n");
-        builder.append(INDENT_2).append("dataListeners.put(target, dl);\n");
-        builder.append(INDENT_2).append("WearableApis.makeWearableApiCall(context, DATA, new WearableApis.WearableApiRunnable() {\n");
-        builder.append(INDENT_3).append("public void run(GoogleApiClient apiClient){\n");
-        builder.append(INDENT_4).append("WearableApis.getDataApi().addListener(apiClient, dl);\n");
-        builder.append(INDENT_3).append("}\n");
-        builder.append(INDENT_2).append("});\n");
-        builder.append(INDENT_2).append("initializeData(target);\n");
-        builder.append(INDENT).append("}\n\n");
-    }
-
     private void writeDeliverDataMethod(StringBuilder builder) {
-        builder.append(INDENT).append("private void deliverData(final T target, final DataItem item) {\n");
+        builder.append(INDENT).append("private void deliverData(final List<T> targets, final DataItem item) {\n");
+        writeNoTargetsCheck(builder);
         builder.append(INDENT_2).append("final String path = item.getUri().getPath();\n");
         builder.append(INDENT_2).append("final byte[] data = item.getData();\n");
         builder.append(INDENT_2).append("final String node = item.getUri().getHost();\n\n");
 
-        writeDataBindings(builder, dataRoutes, "item");
-        builder.append("\n");
+        writeDataBindings(builder, dataRoutes, "WearableApis.unpack(context, path, item", "WearableApis.unpack(context, path, item", INDENT_2);
         builder.append(INDENT).append("}\n\n");
     }
 
     private void writeInitDataMethod(StringBuilder builder) {
-        builder.append(INDENT).append("private void initializeData(final T target) {\n");
+        builder.append(INDENT).append("private void initializeData(final List<T> targets) {\n");
         builder.append(INDENT_2).append("WearableApis.makeWearableApiCall(context, DATA, new WearableApis.WearableApiRunnable() {\n");
         builder.append(INDENT_3).append("public void run(GoogleApiClient apiClient){\n");
 
-        builder.append(INDENT_4).append("final DataItemBuffer existingItems = WearableApis.getDataApi().getDataItems(apiClient).await();\n");
-        builder.append(INDENT_4).append("for(DataItem item:existingItems) {\n");
-        builder.append(INDENT_5).append("deliverData(target, item);\n");
+        builder.append(INDENT_4).append("for(DataItem item:WearableApis.getDataItems(apiClient, DATA_PATHS)) {\n");
+        builder.append(INDENT_5).append("deliverData(targets, item);\n");
         builder.append(INDENT_4).append("}\n");
-        builder.append(INDENT_4).append("existingItems.release();\n");
 
         builder.append(INDENT_3).append("}\n");
         builder.append(INDENT_2).append("});\n");
         builder.append(INDENT).append("}\n\n");
     }
 
-    private void writeDataBindings (StringBuilder builder, Map<String, Route> routes, String dataVariable) {
-        builder.append(INDENT_2);
+    private static Map<Recipient, String> getSourceNames(Set<Recipient> recipients, String sourceName) {
+        final Map<Recipient, String> sourceNames = new HashMap<Recipient, String>();
+        for(Recipient recipient:recipients) {
+            sourceNames.put(recipient, sourceName);
+        }
+        return sourceNames;
+    }
+
+    private void writeNoTargetsCheck(StringBuilder builder) {
+        builder.append(INDENT_2).append("if(targets.isEmpty()) {\n");
+        builder.append(INDENT_3).append("return;\n");
+        builder.append(INDENT_2).append("}\n\n");
+    }
+
+    private void writeDataBindings (StringBuilder builder, Map<String, Route> routes, String unpackCall, String copyCall, String indent) {
+        // Exact paths are found by switching on the path's hash code, rather than comparing the path to each in turn
+        final Map<Integer, List<Route>> exactRoutes = new LinkedHashMap<Integer, List<Route>>();
+        final List<Route> patternRoutes = new ArrayList<Route>();
+        for(Route route : routes.values()) {
+            if(route.isPattern) {
+                patternRoutes.add(route);
+            } else {
+                List<Route> sameHash = exactRoutes.get(route.path.hashCode());
+                if(sameHash==null) {
+                    sameHash = new ArrayList<Route>();
+                    exactRoutes.put(route.path.hashCode(), sameHash);
+                }
+                sameHash.add(route);
+            }
+        }
 
-        boolean startedIfBlock = false;
-        for(Map.Entry<String, Route> entry : routes.entrySet()) {
-            if(startedIfBlock) {
-                builder.append(" else ");
+        if(!exactRoutes.isEmpty()) {
+            builder.append(indent).append("switch (path.hashCode()) {\n");
+            for(Map.Entry<Integer, List<Route>> entry : exactRoutes.entrySet()) {
+                builder.append(indent).append(INDENT).append("case ").append(entry.getKey()).append(":\n");
+                builder.append(indent).append(INDENT_2);
+
+                boolean startedIfBlock = false;
+                for(Route route : entry.getValue()) {
+                    if(startedIfBlock) {
+                        builder.append(" else ");
+                    }
+                    startedIfBlock = true;
+                    route.writeTo(builder, indent + INDENT_2, unpackCall, copyCall, null);
+                }
+                builder.append("\n");
+                builder.append(indent).append(INDENT_2).append("break;\n");
             }
-            startedIfBlock = true;
+            builder.append(indent).append("}\n");
+        }
 
-            entry.getValue().writeTo(builder, INDENT_2, dataVariable);
+        // A path may match more than one pattern, so each is checked
+        for(Route route : patternRoutes) {
+            final String captures = "captures_" + route.patternName;
+            builder.append(indent).append("final String[] ").append(captures).append(" = ")
+                    .append(route.patternName).append(".match(path);\n");
+            builder.append(indent);
+            route.writeTo(builder, indent, unpackCall, copyCall, captures);
+            builder.append("\n");
         }
     }
 
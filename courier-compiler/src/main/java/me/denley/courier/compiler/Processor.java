@@ -22,6 +22,7 @@ import javax.tools.Diagnostic;
 import javax.tools.JavaFileObject;
 
 import me.denley.courier.BackgroundThread;
+import me.denley.courier.Backpressure;
 import me.denley.courier.LocalNode;
 import me.denley.courier.ReceiveData;
 import me.denley.courier.ReceiveMessages;
@@ -38,6 +39,9 @@ public class Processor extends javax.annotation.processing.AbstractProcessor {
     private Map<TypeElement, PostalArea> postalAreaMap = new LinkedHashMap<TypeElement, PostalArea>();
     Set<String> targetClassNames = new LinkedHashSet<String>();
 
+    private final IndexWriter indexWriter = new IndexWriter("Courier$$DeliveryIndex",
+            "Courier.DeliveryIndex", "getDeliveryBoy", "Courier.DeliveryBoy", CLASS_SUFFIX, false);
+
     private PostalArea getPostalArea(TypeElement enclosingElement) {
         PostalArea area = postalAreaMap.get(enclosingElement);
         if(area==null) {
@@ -54,6 +58,7 @@ public class Processor extends javax.annotation.processing.AbstractProcessor {
 
             area = new PostalArea(packageName, targetClassName);
             postalAreaMap.put(enclosingElement, area);
+            indexWriter.add(packageName, enclosingElement, targetClassName);
             targetClassNames.add(enclosingElement.toString());
         }
         return area;
@@ -66,12 +71,14 @@ public class Processor extends javax.annotation.processing.AbstractProcessor {
         set.add(LocalNode.class.getName());
         set.add(RemoteNodes.class.getName());
         set.add(BackgroundThread.class.getName());
+        set.add(Backpressure.class.getName());
         return set;
     }
 
     @Override public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
         postalAreaMap = new LinkedHashMap<TypeElement, PostalArea>();
         verifyBackgroundThreadAnnotations(roundEnv);
+        verifyBackpressureAnnotations(roundEnv);
 
         processReceiveDataAnnotations(roundEnv);
         processReceiveMessagesAnnotations(roundEnv);
@@ -81,6 +88,7 @@ public class Processor extends javax.annotation.processing.AbstractProcessor {
         processParents();
 
         writeClasses();
+        indexWriter.write(processingEnv);
         return true;
     }
 
@@ -119,10 +127,11 @@ public class Processor extends javax.annotation.processing.AbstractProcessor {
     }
 
     private void processElement(Element element, String path, Class annotationClass) {
-        checkForErrors(element, annotationClass);
+        final int captureCount = path==null ? 0 : Route.getCaptureCount(path);
+        checkForErrors(element, annotationClass, captureCount);
 
         final PostalArea area = getPostalArea((TypeElement) element.getEnclosingElement());
-        final Recipient recipient = createRecipient(element);
+        final Recipient recipient = createRecipient(element, annotationClass, captureCount);
 
         if(annotationClass==LocalNode.class) {
             area.addLocalNodeRecipient(recipient);
@@ -134,7 +143,11 @@ public class Processor extends javax.annotation.processing.AbstractProcessor {
         }
     }
 
-    private void checkForErrors(Element element, Class annotationClass) {
+    /**
+     * @param captureCount The number of path segments captured by the path of a route (each passed to
+     *                     a recipient method as a String parameter, after the payload).
+     */
+    private void checkForErrors(Element element, Class annotationClass, int captureCount) {
         if(element.getEnclosingElement().getKind()!= ElementKind.CLASS) {
             throw new IllegalArgumentException("Annotation can only apply to class fields and methods.");
         }
@@ -147,13 +160,19 @@ public class Processor extends javax.annotation.processing.AbstractProcessor {
                 if(modifiers.contains(Modifier.PRIVATE)
                         || modifiers.contains(Modifier.STATIC)) {
                     throw new IllegalArgumentException("Annotated methods must not be private or static");
-                } else if (parameters.size() > 2
-                        || (parameters.size() < 1 && (annotationClass==ReceiveMessages.class || annotationClass==ReceiveData.class))) {
-                    throw new IllegalArgumentException("Incorrect number of parameters for method.");
-                } else if (parameters.size()==2
+                } else if (parameters.size() > 2 + captureCount
+                        || (parameters.size() < 1 + captureCount && (annotationClass==ReceiveMessages.class || annotationClass==ReceiveData.class))) {
+                    throw new IllegalArgumentException(captureCount==0 ? "Incorrect number of parameters for method."
+                            : "Incorrect number of parameters for method. Each segment captured by the path (" + captureCount
+                            + ") must have a String parameter after the payload parameter.");
+                } else if (parameters.size()>1
                         && (annotationClass==ReceiveMessages.class || annotationClass==ReceiveData.class)
-                        && !parameters.get(1).asType().toString().equals(String.class.getName())) {
-                    throw new IllegalArgumentException("The second parameter must be a String (represents the source node ID)");
+                        && !areStrings(parameters.subList(1, parameters.size()))) {
+                    throw new IllegalArgumentException(captureCount==0 ? "The second parameter must be a String (represents the source node ID)"
+                            : "The parameters after the payload must be Strings (the captured path segments, then the source node ID)");
+                } else if(element.getAnnotation(BackgroundThread.class)!=null
+                        && getExecutorName(element, annotationClass)!=null) {
+                    throw new IllegalArgumentException("@BackgroundThread can not be used together with an executor");
                 } else if(annotationClass==LocalNode.class
                         && !parameters.get(0).asType().toString().equals(NODE_CLASS)) {
                     throw new IllegalArgumentException("@LocalNode annotated method must have a parameter that is a "+NODE_CLASS);
@@ -167,6 +186,9 @@ public class Processor extends javax.annotation.processing.AbstractProcessor {
                         || modifiers.contains(Modifier.STATIC)
                         || modifiers.contains(Modifier.FINAL)) {
                     throw new IllegalArgumentException("Annotated fields must not be private, static, nor final");
+                } else if(element.getAnnotation(BackgroundThread.class)!=null
+                        && getExecutorName(element, annotationClass)!=null) {
+                    throw new IllegalArgumentException("@BackgroundThread can not be used together with an executor");
                 } else if(annotationClass==LocalNode.class && !element.asType().toString().equalsIgnoreCase(NODE_CLASS)) {
                     throw new IllegalArgumentException("@LocalNode annotated field must be a "+NODE_CLASS);
                 } else if(annotationClass==RemoteNodes.class
@@ -179,21 +201,61 @@ public class Processor extends javax.annotation.processing.AbstractProcessor {
         }
     }
 
-    private Recipient createRecipient(Element element) {
+    private boolean areStrings(List<? extends VariableElement> parameters) {
+        for(VariableElement parameter:parameters) {
+            if(!parameter.asType().toString().equals(String.class.getName())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Recipient createRecipient(Element element, Class<?> annotationClass, int captureCount) {
+        final String executor = getExecutorName(element, annotationClass);
+        final boolean privateCopy = isPrivateCopy(element, annotationClass);
+        final String name = element.getSimpleName().toString();
+        final String qualifiedName = ((TypeElement) element.getEnclosingElement()).getQualifiedName() + "." + name;
+
+        final Backpressure backpressure = annotationClass==ReceiveData.class || annotationClass==ReceiveMessages.class
+                ? element.getAnnotation(Backpressure.class) : null;
+        final String policy = backpressure==null ? null : backpressure.value().name();
+        final int capacity = backpressure==null ? 0 : backpressure.capacity();
+
         if(element.getKind().isField()) {
-            final String name = element.getSimpleName().toString();
             final String payload = element.asType().toString();
-            return new Recipient(name, payload);
+            return new Recipient(name, qualifiedName, payload, executor, privateCopy, policy, capacity);
         } else {
             final ExecutableElement executableElement = (ExecutableElement) element;
             final List<? extends VariableElement> params = executableElement.getParameters();
-            final String name = element.getSimpleName().toString();
             final String payload = params.get(0).asType().toString();
 
             final boolean backgroundThread = element.getAnnotation(BackgroundThread.class)!=null;
 
-            return new Recipient(name, payload, params.size()>1, backgroundThread);
+            return new Recipient(name, qualifiedName, payload, captureCount, params.size()>1+captureCount,
+                    backgroundThread, executor, privateCopy, policy, capacity);
+        }
+    }
+
+    private boolean isPrivateCopy(Element element, Class<?> annotationClass) {
+        if(annotationClass==ReceiveData.class) {
+            return element.getAnnotation(ReceiveData.class).privateCopy();
+        } else if (annotationClass==ReceiveMessages.class) {
+            return element.getAnnotation(ReceiveMessages.class).privateCopy();
+        } else {
+            return false;
+        }
+    }
+
+    private String getExecutorName(Element element, Class<?> annotationClass) {
+        final String executor;
+        if(annotationClass==ReceiveData.class) {
+            executor = element.getAnnotation(ReceiveData.class).executor();
+        } else if (annotationClass==ReceiveMessages.class) {
+            executor = element.getAnnotation(ReceiveMessages.class).executor();
+        } else {
+            executor = "";
         }
+        return executor.isEmpty() ? null : executor;
     }
 
     private void verifyBackgroundThreadAnnotations(RoundEnvironment roundEnv) {
@@ -222,6 +284,19 @@ public class Processor extends javax.annotation.processing.AbstractProcessor {
         }
     }
 
+    private void verifyBackpressureAnnotations(RoundEnvironment roundEnv) {
+        for(Element element:roundEnv.getElementsAnnotatedWith(Backpressure.class)) {
+            final Backpressure backpressure = element.getAnnotation(Backpressure.class);
+            if(element.getAnnotation(ReceiveData.class)==null && element.getAnnotation(ReceiveMessages.class)==null) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                        "@Backpressure must be used with @ReceiveData or @ReceiveMessages", element);
+            } else if (backpressure.value()!=Backpressure.Policy.LATEST && backpressure.capacity() < 1) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                        "@Backpressure capacity must be at least 1", element);
+            }
+        }
+    }
+
     private void processParents() {
         // Try to find a parent injector for each injector.
         for (Map.Entry<TypeElement, PostalArea> entry : postalAreaMap.entrySet()) {
@@ -1,65 +1,183 @@
 package me.denley.courier.compiler;
 
+import java.util.Map;
 import java.util.Set;
 
 import javax.lang.model.element.ElementKind;
 
 class Recipient {
 
-    public static boolean hasMainThreadReceipient(Set<Recipient> recipients) {
-        for(Recipient r:recipients) {
-            if(!r.backgroundThread) {
-                return true;
-            }
-        }
-
-        return false;
-    }
+    public final String recipientName;
 
+    /** The name of the field or method, including its declaring class */
+    public final String qualifiedName;
 
-    public final String recipientName;
     public final String payloadType;
 
     public final ElementKind deliveryType;
+    public final int captureCount;
     public final boolean hasNodeParameter;
     public final boolean backgroundThread;
 
+    /** The name of the executor to deliver on, or null to use the default threading */
+    public final String executor;
+
+    /** Whether the payload is unpacked separately for this recipient, rather than shared with other recipients */
+    public final boolean privateCopy;
+
+    /** The name of the Backpressure.Policy used for deliveries to this recipient, or null to deliver immediately */
+    public final String backpressure;
+
+    /** The capacity of this recipient's queue, if it has a backpressure policy */
+    public final int capacity;
 
-    public Recipient(String name, String payload) {
+    public Recipient(String name, String qualifiedName, String payload, String executor, boolean privateCopy,
+                     String backpressure, int capacity) {
         this.recipientName = name;
+        this.qualifiedName = qualifiedName;
         this.deliveryType = ElementKind.FIELD;
         this.payloadType = payload;
         this.backgroundThread = true;
+        this.captureCount = 0;
         this.hasNodeParameter = false;
+        this.executor = executor;
+        this.privateCopy = privateCopy;
+        this.backpressure = backpressure;
+        this.capacity = capacity;
     }
 
-    public Recipient(String name, String payload, boolean hasNodeParameter, boolean backgroundThread) {
+    public Recipient(String name, String qualifiedName, String payload, int captureCount, boolean hasNodeParameter,
+                     boolean backgroundThread, String executor, boolean privateCopy, String backpressure, int capacity) {
         this.recipientName = name;
+        this.qualifiedName = qualifiedName;
         this.deliveryType = ElementKind.METHOD;
         this.payloadType = payload;
+        this.captureCount = captureCount;
         this.hasNodeParameter = hasNodeParameter;
         this.backgroundThread = backgroundThread;
+        this.executor = executor;
+        this.privateCopy = privateCopy;
+        this.backpressure = backpressure;
+        this.capacity = capacity;
     }
 
-    public void writeDataBindingTo(StringBuilder builder) {
-        final String name = "as_"+payloadType.replace(".", "_");
-        writeBindingTo(builder, name);
+    /**
+     * Writes the deliveries to the main thread recipients in the given set, through the main thread queue.
+     * Consecutive method calls are queued together, and each field is queued separately (so that only the newest
+     * value queued for a field is written).
+     *
+     * @param path The name of the variable holding the path that was received on, or "null" if there isn't one.
+     * @param sourceNames The name of the variable to deliver to each recipient.
+     */
+    public static void writeMainThreadBindingsTo(StringBuilder builder, String indent, Set<Recipient> recipients,
+                                                 String path, Map<Recipient, String> sourceNames, String captures) {
+        boolean inMethodBlock = false;
+        for(Recipient recipient:recipients) {
+            if(!recipient.isMainThread() || recipient.backpressure!=null) {
+                continue;
+            }
+
+            final boolean isField = recipient.deliveryType==ElementKind.FIELD;
+            if(inMethodBlock && isField) {
+                writeEndOfMainThreadBlock(builder, indent);
+                inMethodBlock = false;
+            }
+            if(!inMethodBlock) {
+                builder.append(indent).append("WearableApis.postToMainThread(").append(path).append(", ");
+                if(isField) {
+                    builder.append("target, \"").append(recipient.qualifiedName).append("\", ");
+                }
+                builder.append("new Runnable() {\n");
+                builder.append(indent).append(PostalArea.INDENT).append("public void run() {\n");
+                inMethodBlock = !isField;
+            }
+
+            builder.append(indent).append(PostalArea.INDENT_2);
+            recipient.writeBindingTo(builder, sourceNames.get(recipient), captures);
+
+            if(isField) {
+                writeEndOfMainThreadBlock(builder, indent);
+            }
+        }
+        if(inMethodBlock) {
+            writeEndOfMainThreadBlock(builder, indent);
+        }
+    }
+
+    private static void writeEndOfMainThreadBlock(StringBuilder builder, String indent) {
+        builder.append(indent).append(PostalArea.INDENT).append("}\n");
+        builder.append(indent).append("});\n");
+    }
+
+    /** @return true if this recipient should be delivered to immediately, on the calling thread */
+    public boolean isCallingThread() {
+        return executor==null && backgroundThread;
+    }
+
+    /** @return true if this recipient should be delivered to on the main thread */
+    public boolean isMainThread() {
+        return executor==null && !backgroundThread;
+    }
+
+    /** Writes a delivery to this recipient through its queue, which applies its backpressure policy. */
+    public void writeBackpressureDataBindingTo(StringBuilder builder, String indent, String sourceName, String captures) {
+        builder.append("WearableApis.deliver(target, \"").append(qualifiedName).append("\", Backpressure.Policy.")
+                .append(backpressure).append(", ").append(capacity).append(", ");
+        if(executor!=null) {
+            builder.append("WearableApis.getExecutor(\"").append(executor).append("\")");
+        } else if (isMainThread()) {
+            builder.append("WearableApis.getMainThreadExecutor()");
+        } else {
+            builder.append("null");
+        }
+        builder.append(", new Runnable() {\n");
+        builder.append(indent).append(PostalArea.INDENT).append("public void run() {\n");
+        builder.append(indent).append(PostalArea.INDENT_2);
+        writeDataBindingTo(builder, sourceName, captures);
+        builder.append(indent).append(PostalArea.INDENT).append("}\n");
+        builder.append(indent).append("});\n");
+    }
+
+    public void writeExecutorDataBindingTo(StringBuilder builder, String indent, String sourceName, String captures) {
+        if(deliveryType==ElementKind.FIELD) {
+            builder.append("WearableApis.execute(\"").append(executor).append("\", path, target, \"")
+                    .append(qualifiedName).append("\", new Runnable() {\n");
+        } else {
+            builder.append("WearableApis.getExecutor(\"").append(executor).append("\").execute(new Runnable() {\n");
+        }
+        builder.append(indent).append(PostalArea.INDENT).append("public void run() {\n");
+        builder.append(indent).append(PostalArea.INDENT_2);
+        writeDataBindingTo(builder, sourceName, captures);
+        builder.append(indent).append(PostalArea.INDENT).append("}\n");
+        builder.append(indent).append("});\n");
+    }
+
+    /**
+     * @param sourceName The name of the variable holding the unpacked payload.
+     * @param captures The name of the variable holding the segments captured from the path, or null if the
+     *                 route is not a pattern.
+     */
+    public void writeDataBindingTo(StringBuilder builder, String sourceName, String captures) {
+        writeBindingTo(builder, sourceName, captures);
     }
 
     public void writeLocalNodeBindingTo(StringBuilder builder) {
-        writeBindingTo(builder, "localNode");
+        writeBindingTo(builder, "localNode", null);
     }
 
     public void writeRemoteNodeBindingTo(StringBuilder builder) {
-        writeBindingTo(builder, "nodes");
+        writeBindingTo(builder, "nodes", null);
     }
 
-    private void writeBindingTo(StringBuilder builder, String sourceName) {
+    private void writeBindingTo(StringBuilder builder, String sourceName, String captures) {
         builder.append("target.");
         builder.append(recipientName);
 
         if(deliveryType==ElementKind.METHOD){
             builder.append("(").append(sourceName);
+            for(int i=0; i<captureCount; i++) {
+                builder.append(", ").append(captures).append("[").append(i).append("]");
+            }
             if(hasNodeParameter) {
                 builder.append(", node");
             }
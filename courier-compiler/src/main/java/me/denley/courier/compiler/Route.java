@@ -1,57 +1,133 @@
 package me.denley.courier.compiler;
 
+import java.util.HashMap;
 import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Set;
 
 class Route {
 
+    /**
+     * Checks the syntax of a path, which may be a pattern (see me.denley.courier.PathPattern).
+     *
+     * @return The number of segments captured by the path, which are passed to recipient methods.
+     * @throws IllegalArgumentException If the path is not a valid pattern.
+     */
+    public static int getCaptureCount(String path) {
+        final String[] parts = path.split("/", -1);
+        int captures = 0;
+        for(int i=0; i<parts.length; i++) {
+            final String part = parts[i];
+            if(part.length() > 2 && part.charAt(0) == '{' && part.charAt(part.length() - 1) == '}') {
+                captures++;
+            } else if(part.equals("*") && i == parts.length - 1) {
+                captures++;
+            } else if(part.indexOf('{') != -1 || part.indexOf('}') != -1 || part.indexOf('*') != -1) {
+                throw new IllegalArgumentException("Invalid path \"" + path
+                        + "\". Path segments may be a {name}, or a final *, but must not otherwise contain '{', '}', or '*'.");
+            }
+        }
+        return captures;
+    }
+
     public final String path;
+    public final boolean isPattern;
     public final Set<Recipient> recipients = new LinkedHashSet<Recipient>();
 
+    /** The name of the PathPattern constant used to match this route, if it is a pattern */
+    public String patternName = null;
+
     public Route(String path) {
         this.path = path;
+        this.isPattern = getCaptureCount(path) > 0;
     }
 
-    public void writeTo(StringBuilder builder, String indent, String dataVariable) {
-        builder.append("if (path.equals(\"").append(path).append("\")) {\n");
+    /**
+     * Writes the delivery of a payload received on the path (a variable named "path") to each of the targets
+     * (a variable named "targets"). Each payload class is unpacked once and shared by all recipients, except
+     * those that need a private copy.
+     *
+     * @param unpackCall The start of the call used to unpack the payload, to which the payload class is appended
+     *                   (e.g. "WearableApis.unpack(context, path, data").
+     * @param copyCall The start of the call used to unpack a private copy of the payload.
+     * @param captures The name of the variable holding the result of matching the path to this route's pattern,
+     *                 or null if this route is not a pattern.
+     */
+    public void writeTo(StringBuilder builder, String indent, String unpackCall, String copyCall, String captures) {
+        if(captures==null) {
+            builder.append("if (path.equals(\"").append(path).append("\")) {\n");
+        } else {
+            builder.append("if (").append(captures).append(" != null) {\n");
+        }
+
+        final Set<String> sharedTypes = getSharedTypes();
+        for(String type:sharedTypes) {
+            builder.append(indent).append(PostalArea.INDENT);
+            writeUnpackTo(builder, type, getSharedName(type), unpackCall);
+        }
+        if(!sharedTypes.isEmpty()) {
+            builder.append("\n");
+        }
+
+        final String loopIndent = indent + PostalArea.INDENT_2;
+        builder.append(indent).append(PostalArea.INDENT).append("for (final T target : targets) {\n");
+
+        // Private copies are unpacked here, rather than on the recipient's thread, as unpacking may block
+        final Map<Recipient, String> sourceNames = new HashMap<Recipient, String>();
+        int copies = 0;
+        for(Recipient recipient:recipients) {
+            if(recipient.privateCopy) {
+                final String name = "copy_" + copies++;
+                builder.append(loopIndent);
+                writeUnpackTo(builder, recipient.payloadType, name, copyCall);
+                sourceNames.put(recipient, name);
+            } else {
+                sourceNames.put(recipient, getSharedName(recipient.payloadType));
+            }
+        }
 
-        for(String type:getTargetTypes()) {
-            final String name = "as_"+type.replace(".", "_");
-            builder.append(indent).append(PostalArea.INDENT).append("final ")
-                    .append(type).append(" ").append(name)
-                    .append(" = Packager.unpack(context, ")
-                    .append(dataVariable).append(", ")
-                    .append(type).append(".class")
-                    .append(");\n\n");
+        for(Recipient recipient:recipients) {
+            if(recipient.isCallingThread() && recipient.backpressure==null) {
+                builder.append(loopIndent);
+                recipient.writeDataBindingTo(builder, sourceNames.get(recipient), captures);
+            }
         }
 
         for(Recipient recipient:recipients) {
-            if(recipient.backgroundThread) {
-                builder.append(indent).append(PostalArea.INDENT);
-                recipient.writeDataBindingTo(builder);
+            if(recipient.executor!=null && recipient.backpressure==null) {
+                builder.append(loopIndent);
+                recipient.writeExecutorDataBindingTo(builder, loopIndent, sourceNames.get(recipient), captures);
             }
         }
 
-        if(Recipient.hasMainThreadReceipient(recipients)) {
-            builder.append(indent).append(PostalArea.INDENT).append("handler.post(new Runnable() {\n");
-            builder.append(indent).append(PostalArea.INDENT_2).append("public void run() {\n");
-            for (Recipient recipient : recipients) {
-                if (!recipient.backgroundThread) {
-                    builder.append(indent).append(PostalArea.INDENT_3);
-                    recipient.writeDataBindingTo(builder);
-                }
+        Recipient.writeMainThreadBindingsTo(builder, loopIndent, recipients, "path", sourceNames, captures);
+
+        for(Recipient recipient:recipients) {
+            if(recipient.backpressure!=null) {
+                builder.append(loopIndent);
+                recipient.writeBackpressureDataBindingTo(builder, loopIndent, sourceNames.get(recipient), captures);
             }
-            builder.append(indent).append(PostalArea.INDENT_2).append("}\n");
-            builder.append(indent).append(PostalArea.INDENT).append("});\n");
         }
 
+        builder.append(indent).append(PostalArea.INDENT).append("}\n");
         builder.append(indent).append("}");
     }
 
-    private Set<String> getTargetTypes() {
+    private static void writeUnpackTo(StringBuilder builder, String type, String name, String unpackCall) {
+        builder.append("final ").append(type).append(" ").append(name)
+                .append(" = ").append(unpackCall).append(", ")
+                .append(type).append(".class")
+                .append(");\n");
+    }
+
+    private static String getSharedName(String type) {
+        return "as_"+type.replace(".", "_");
+    }
+
+    private Set<String> getSharedTypes() {
         final Set<String> types = new LinkedHashSet<String>();
         for(Recipient recipient:recipients) {
-            if(!types.contains(recipient.payloadType)) {
+            if(!recipient.privateCopy && !types.contains(recipient.payloadType)) {
                 types.add(recipient.payloadType);
             }
         }
@@ -0,0 +1,61 @@
+package me.denley.courier.compiler;
+
+import javax.lang.model.element.Element;
+
+/**
+ * Field types that can be written by the generated Wire format methods, and the
+ * me.denley.courier.Wire methods used to write them.
+ */
+enum WireFieldType {
+    BOOLEAN(new String[]{"boolean", "java.lang.Boolean"}, "Boolean", WireFieldType.VARINT),
+    BYTE(new String[]{"byte", "java.lang.Byte"}, "Byte", WireFieldType.VARINT),
+    BYTE_ARRAY(new String[]{"byte[]"}, "Bytes", WireFieldType.LENGTH_DELIMITED),
+    DOUBLE(new String[]{"double", "java.lang.Double"}, "Double", WireFieldType.FIXED64),
+    FLOAT(new String[]{"float", "java.lang.Float"}, "Float", WireFieldType.FIXED32),
+    FLOAT_ARRAY(new String[]{"float[]"}, "Floats", WireFieldType.LENGTH_DELIMITED),
+    INTEGER(new String[]{"int", "java.lang.Integer"}, "Int", WireFieldType.VARINT),
+    INTEGER_ARRAY_LIST(new String[]{"java.util.ArrayList<java.lang.Integer>"}, "IntegerList", WireFieldType.LENGTH_DELIMITED),
+    LONG(new String[]{"long", "java.lang.Long"}, "Long", WireFieldType.VARINT),
+    LONG_ARRAY(new String[]{"long[]"}, "Longs", WireFieldType.LENGTH_DELIMITED),
+    STRING(new String[]{"java.lang.String"}, "String", WireFieldType.LENGTH_DELIMITED),
+    STRING_ARRAY(new String[]{"java.lang.String[]"}, "Strings", WireFieldType.LENGTH_DELIMITED),
+    STRING_ARRAY_LIST(new String[]{"java.util.ArrayList<java.lang.String>"}, "StringList", WireFieldType.LENGTH_DELIMITED),
+    ;
+
+    // Must match the constants in me.denley.courier.Wire
+    static final int VARINT = 0;
+    static final int FIXED64 = 1;
+    static final int LENGTH_DELIMITED = 2;
+    static final int FIXED32 = 5;
+    static final int NESTED = 6;
+
+    public final String[] classTypes;
+    public final String methodSuffix;
+    public final int wireType;
+
+    private WireFieldType(String[] classTypes, String methodSuffix, int wireType) {
+        this.classTypes = classTypes;
+        this.methodSuffix = methodSuffix;
+        this.wireType = wireType;
+    }
+
+    public static WireFieldType getFieldType(Element element) {
+        final String elementType = element.asType().toString();
+
+        for(WireFieldType type:values()) {
+            for(String classType:type.classTypes) {
+                if(classType.equals(elementType)) {
+                    return type;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /** @return The key for a field with the given number and wire type (see me.denley.courier.Wire#key). */
+    public static int key(int field, int wireType) {
+        return (field << 3) | wireType;
+    }
+
+}